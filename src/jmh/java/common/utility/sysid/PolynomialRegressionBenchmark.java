@@ -0,0 +1,54 @@
+package common.utility.sysid;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link PolynomialRegression} against the original Jama based solver on
+ * characterization sized inputs. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolynomialRegressionBenchmark {
+
+    @Param({"10000"})
+    public int points;
+
+    @Param({"1", "4"})
+    public int degree;
+
+    private double[] x;
+    private double[] y;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(3128);
+        x = new double[points];
+        y = new double[points];
+        for (int i = 0; i < points; i++) {
+            // 250 Hz samples of a quartic velocity curve with sensor noise
+            x[i] = i * 0.004;
+            y[i] = 0.5 + 2 * x[i] - 0.3 * x[i] * x[i] + 0.01 * Math.pow(x[i], 4) + 0.1 * random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public double householder() {
+        return new PolynomialRegression(x, y, degree).R2();
+    }
+
+    @Benchmark
+    public double jama() {
+        return new JamaPolynomialRegression(x, y, degree).R2();
+    }
+}
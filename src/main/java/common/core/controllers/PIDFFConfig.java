@@ -7,6 +7,16 @@ import java.util.function.DoubleSupplier;
  */
 public class PIDFFConfig {
 
+    /**
+     * How the gravity gain is applied.
+     */
+    public enum GravityType {
+        /** Constant gravity gain, ie. an elevator. */
+        ELEVATOR,
+        /** Gravity gain scaled by the cosine of the mechanism angle, ie. an arm. */
+        ARM
+    }
+
     public double kP;
     public double kI;
     public double kD;
@@ -17,6 +27,8 @@ public class PIDFFConfig {
 
     public DoubleSupplier kG_Function = ()-> 1;
 
+    public GravityType gravityType = GravityType.ELEVATOR;
+
     public PIDFFConfig(double kP, double kI, double kD, DoubleSupplier kS, DoubleSupplier kV, DoubleSupplier kA, DoubleSupplier kG) {
         this.kP = kP;
         this.kI = kI;
@@ -113,8 +125,16 @@ public class PIDFFConfig {
     }
 
     /**
-     * Sets the velocity gain.
-     * @param kA Modifies kV based on the function.
+     * Sets the acceleration gain.
+     * @param kA The power required to reach an acceleration as a double.
+     */
+    public void setkA(double kA) {
+        setkA(()-> kA);
+    }
+
+    /**
+     * Sets the acceleration gain.
+     * @param kA Modifies kA based on the function.
      */
     public void setkA(DoubleSupplier kA) {
         this.kA = kA;
@@ -180,4 +200,20 @@ public class PIDFFConfig {
     public DoubleSupplier getkG_Function() {
         return kG_Function;
     }
+
+    /**
+     * Sets how the gravity gain is applied by motor controllers that compute feedforward onboard.
+     * @param gravityType ELEVATOR for a constant kG, ARM for kG scaled by the cosine of the angle.
+     */
+    public void setGravityType(GravityType gravityType) {
+        this.gravityType = gravityType;
+    }
+
+    /**
+     * Returns how the gravity gain is applied.
+     * @return The gravity type.
+     */
+    public GravityType getGravityType() {
+        return gravityType;
+    }
 }
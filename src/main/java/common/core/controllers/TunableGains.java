@@ -0,0 +1,177 @@
+package common.core.controllers;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+import common.core.misc.BackgroundExecutor;
+import common.core.misc.NAR_Robot;
+import common.core.misc.NAR_Robot.Priority;
+import common.hardware.motorcontroller.NAR_Motor;
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Team 3128's service for tuning {@link PIDFFConfig} gains live from NetworkTables.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Each bound config gets entries under TunableGains/name, read once per loop into primitive snapshots.
+ * <li> Only gains edited from NetworkTables are replaced with constants, the others keep the caller's
+ *      suppliers. Setting an entry back to its published starting value restores the caller's supplier.
+ * <li> Code caching gains, ie. a SimpleMotorFeedforward, can {@link #addListener} to get the snapshot when it changes.
+ * <li> Once edits have settled for {@link #settleTime}, a constant copy of the gains is applied to the bound motors
+ *      with configPID on the background thread. A burst of edits causes a single configurator apply.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class TunableGains {
+
+    private static final String[] KEYS = {"kP", "kI", "kD", "kS", "kV", "kA", "kG"};
+
+    private static class Binding {
+        private final PIDFFConfig config;
+        private final NAR_Motor[] motors;
+        private final DoubleEntry[] entries = new DoubleEntry[KEYS.length];
+        private final double[] values = new double[KEYS.length];
+        private final double[] initial = new double[KEYS.length];
+        private final DoubleSupplier[] suppliers;
+        private final AtomicBoolean applyPending = new AtomicBoolean(false);
+        private boolean dirty = false;
+        private double lastEdit;
+
+        private Binding(String name, PIDFFConfig config, NAR_Motor[] motors) {
+            this.config = config;
+            this.motors = motors;
+            values[0] = config.kP;
+            values[1] = config.kI;
+            values[2] = config.kD;
+            values[3] = config.getkS();
+            values[4] = config.getkV();
+            values[5] = config.getkA();
+            values[6] = config.getkG();
+            System.arraycopy(values, 0, initial, 0, KEYS.length);
+            suppliers = new DoubleSupplier[] {null, null, null, config.kS, config.kV, config.kA, config.kG};
+
+            final NetworkTable table = NetworkTableInstance.getDefault().getTable("TunableGains").getSubTable(name);
+            for (int i = 0; i < KEYS.length; i++) {
+                entries[i] = table.getDoubleTopic(KEYS[i]).getEntry(values[i]);
+                entries[i].set(values[i]);
+            }
+        }
+
+        /**
+         * Reads the entries and returns whether any gain changed.
+         */
+        private boolean poll() {
+            boolean changed = false;
+            for (int i = 0; i < KEYS.length; i++) {
+                final double value = entries[i].get(values[i]);
+                if (value != values[i]) {
+                    values[i] = value;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Writes the snapshot into the config, as constants for edited gains and the caller's suppliers otherwise.
+         */
+        private void store() {
+            config.kP = values[0];
+            config.kI = values[1];
+            config.kD = values[2];
+            config.setkS(gain(3));
+            config.setkV(gain(4));
+            config.setkA(gain(5));
+            config.setkG(gain(6));
+        }
+
+        private DoubleSupplier gain(int index) {
+            if (values[index] == initial[index]) return suppliers[index];
+            final double value = values[index];
+            return ()-> value;
+        }
+
+        /**
+         * Applies a constant copy of the snapshot on the background thread once edits have settled
+         * and no earlier apply is still running.
+         */
+        private void applyIfSettled(double now) {
+            if (!dirty || now - lastEdit < settleTime || applyPending.getAndSet(true)) return;
+            dirty = false;
+            final PIDFFConfig applied = new PIDFFConfig(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+            applied.setGravityType(config.getGravityType());
+            applied.setkG_Function(config.getkG_Function());
+            BackgroundExecutor.run(() -> {
+                try {
+                    for (final NAR_Motor motor : motors) {
+                        motor.configPID(applied);
+                    }
+                } finally {
+                    applyPending.set(false);
+                }
+            });
+        }
+    }
+
+    /** Time without edits before gains are applied to the motors, in seconds. */
+    public static double settleTime = 0.25;
+
+    private static final ArrayList<Binding> bindings = new ArrayList<Binding>();
+    private static final IdentityHashMap<PIDFFConfig, ArrayList<Consumer<double[]>>> listeners = new IdentityHashMap<>();
+    private static boolean started = false;
+
+    private TunableGains() {}
+
+    /**
+     * Binds a config to NetworkTables entries and re-applies it to motors when the entries change.
+     * @param name Name of the entries' table, ie. the subsystem name.
+     * @param config Gains to tune. Its current values are published as the starting point.
+     * @param motors Motors configured with the gains.
+     */
+    public static void bind(String name, PIDFFConfig config, NAR_Motor... motors) {
+        bindings.add(new Binding(name, config, motors));
+
+        if (started) return;
+        started = true;
+        NAR_Robot.addPeriodic("TunableGains", TunableGains::update, NAR_Robot.kDefaultPeriod, Priority.LOW);
+    }
+
+    /**
+     * Calls a listener on the main loop whenever a config's tuned gains change, whether or not it is bound yet.
+     * @param config Gains to watch.
+     * @param listener Receives the gains in kP, kI, kD, kS, kV, kA, kG order. The array is reused, copy what is kept.
+     */
+    public static void addListener(PIDFFConfig config, Consumer<double[]> listener) {
+        listeners.computeIfAbsent(config, key -> new ArrayList<>()).add(listener);
+    }
+
+    /**
+     * Snapshots every bound config, notifies listeners of changes and applies settled edits.
+     */
+    private static void update() {
+        final double now = Timer.getFPGATimestamp();
+        for (int i = 0; i < bindings.size(); i++) {
+            final Binding binding = bindings.get(i);
+            if (binding.poll()) {
+                binding.store();
+                binding.dirty = true;
+                binding.lastEdit = now;
+                final ArrayList<Consumer<double[]>> watching = listeners.get(binding.config);
+                if (watching != null) {
+                    for (int j = 0; j < watching.size(); j++) {
+                        watching.get(j).accept(binding.values);
+                    }
+                }
+            }
+            binding.applyIfSettled(now);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package common.core.misc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+/**
+ * Team 3128's per callback heap allocation accounting.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Opt in with {@link #enable()}. Every NAR_Robot callback and SwerveBase.periodic is then measured
+ *      with the main thread's allocated byte counter, commands can be measured with {@link #track(Command)}.
+ * <li> Measuring only reads a thread counter before and after each run, the totals are published
+ *      under AllocationTracker/name once a second as bytes per run and bytes per second.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class AllocationTracker {
+
+    private static final double PUBLISH_PERIOD = 1.0;
+
+    /**
+     * Allocation totals of one measured piece of code.
+     */
+    public static class Counter {
+        private final String name;
+        private long bytes = 0;
+        private long runs = 0;
+        private long windowBytes = 0;
+        private DoublePublisher bytesPerRun;
+        private DoublePublisher bytesPerSecond;
+        private DoublePublisher totalBytes;
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the bytes allocated over every measured run.
+         * @return Total bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the number of measured runs.
+         * @return Number of runs.
+         */
+        public long getRuns() {
+            return runs;
+        }
+
+        private void publish(double elapsed) {
+            if (bytesPerRun == null) {
+                final NetworkTable table = NetworkTableInstance.getDefault().getTable("AllocationTracker").getSubTable(name);
+                bytesPerRun = table.getDoubleTopic("BytesPerRun").publish();
+                bytesPerSecond = table.getDoubleTopic("BytesPerSecond").publish();
+                totalBytes = table.getDoubleTopic("TotalBytes").publish();
+            }
+            bytesPerRun.set(runs > 0 ? (double) bytes / runs : 0);
+            bytesPerSecond.set(windowBytes / elapsed);
+            totalBytes.set(bytes);
+            windowBytes = 0;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final ArrayList<Counter> counters = new ArrayList<Counter>();
+    private static boolean enabled = false;
+    private static double lastPublish;
+
+    private AllocationTracker() {}
+
+    /**
+     * Starts measuring allocations.
+     */
+    public static void enable() {
+        if (enabled) return;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        enabled = true;
+        lastPublish = Timer.getFPGATimestamp();
+        NAR_Robot.addPeriodic("AllocationTracker", AllocationTracker::publish, PUBLISH_PERIOD, NAR_Robot.Priority.LOW);
+    }
+
+    /**
+     * Returns whether allocations are being measured.
+     * @return True after {@link #enable()}.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates a counter published under the given name.
+     * @param name Name of the measured code.
+     * @return The counter.
+     */
+    public static Counter counter(String name) {
+        final Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Reads the current thread's allocation counter before a measured run.
+     * @return Bytes allocated by the thread so far, or -1 when not measuring.
+     */
+    public static long start() {
+        return enabled ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Adds the bytes allocated since {@link #start()} to a counter.
+     * @param counter Counter of the measured code.
+     * @param start Value returned by start.
+     */
+    public static void stop(Counter counter, long start) {
+        if (start < 0) return;
+        final long bytes = threads.getCurrentThreadAllocatedBytes() - start;
+        counter.bytes += bytes;
+        counter.windowBytes += bytes;
+        counter.runs++;
+    }
+
+    /**
+     * Wraps a command so its initialize, execute and end allocations are counted under its name.
+     * @param command Command to measure.
+     * @return The wrapped command.
+     */
+    public static Command track(Command command) {
+        final Counter counter = counter(command.getName());
+        return new WrapperCommand(command) {
+            @Override
+            public void initialize() {
+                final long start = start();
+                m_command.initialize();
+                stop(counter, start);
+            }
+
+            @Override
+            public void execute() {
+                final long start = start();
+                m_command.execute();
+                stop(counter, start);
+            }
+
+            @Override
+            public void end(boolean interrupted) {
+                final long start = start();
+                m_command.end(interrupted);
+                stop(counter, start);
+            }
+        };
+    }
+
+    private static void publish() {
+        final double now = Timer.getFPGATimestamp();
+        final double elapsed = Math.max(now - lastPublish, 1E-3);
+        lastPublish = now;
+        for (int i = 0; i < counters.size(); i++) {
+            counters.get(i).publish(elapsed);
+        }
+    }
+}
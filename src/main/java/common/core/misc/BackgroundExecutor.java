@@ -0,0 +1,74 @@
+package common.core.misc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Team 3128's shared executor for work that should stay off the main robot loop.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Runs on a single daemon thread, so jobs never compete with each other for the second core.
+ * <li> Results that touch robot state should be handed back with {@link NAR_Robot#runOnMainLoop(Runnable)}.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class BackgroundExecutor {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(poolThreadFactory("NAR_Background"));
+
+    private BackgroundExecutor() {}
+
+    /**
+     * Creates a thread factory for library owned daemon threads.
+     * @param name Base name of the threads.
+     * @return A thread factory creating named daemon threads.
+     */
+    public static ThreadFactory threadFactory(String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a thread factory for long lived pool threads, each pinned once to the housekeeping core
+     * when it starts if {@link ThreadControls} are enabled. Not for threads started per use.
+     * @param name Base name of the threads.
+     * @return A thread factory creating named daemon threads.
+     */
+    static ThreadFactory poolThreadFactory(String name) {
+        final ThreadFactory factory = threadFactory(name);
+        return runnable -> factory.newThread(() -> {
+            ThreadControls.configureHousekeeping();
+            runnable.run();
+        });
+    }
+
+    /**
+     * Runs a job on the background thread.
+     * @param job The job to run.
+     * @return A future completed when the job finishes.
+     */
+    public static CompletableFuture<Void> run(Runnable job) {
+        return CompletableFuture.runAsync(job, executor);
+    }
+
+    /**
+     * Computes a value on the background thread.
+     * @param <T> Type of the value.
+     * @param job The job computing the value.
+     * @return A future completed with the value.
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> job) {
+        return CompletableFuture.supplyAsync(job, executor);
+    }
+}
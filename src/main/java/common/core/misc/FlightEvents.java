@@ -0,0 +1,100 @@
+package common.core.misc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Team 3128's Java Flight Recorder events.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Events cost almost nothing until a recording enables them, ie. {@code jcmd <pid> JFR.start} on the roboRIO.
+ * <li> Enable or disable them per name, ie. {@code common.MotorWrite#enabled=false}, to keep recordings small.
+ * <li> Create an event, check {@code isEnabled()} before doing any extra work, then commit it.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class FlightEvents {
+
+    private FlightEvents() {}
+
+    @Name("common.MotorWrite")
+    @Label("Motor Write")
+    @Category({"NAR", "Motors"})
+    @Description("NAR_Motor.set call, sent to the motor controller or suppressed as unchanged")
+    public static class MotorWrite extends Event {
+        @Label("Device Id")
+        public int deviceId;
+        @Label("Value")
+        public double value;
+        @Label("Mode")
+        public String mode;
+        @Label("Feedforward")
+        public double feedForward;
+        @Label("Sent")
+        public boolean sent;
+    }
+
+    @Name("common.ConfigAttempt")
+    @Label("Config Attempt")
+    @Category({"NAR", "Motors"})
+    @Description("One attempt to apply a motor controller config")
+    public static class ConfigAttempt extends Event {
+        @Label("Device Id")
+        public int deviceId;
+        @Label("Attempt")
+        public int attempt;
+        @Label("Status")
+        public String status;
+        @Label("OK")
+        public boolean ok;
+    }
+
+    @Name("common.ConfigFailure")
+    @Label("Config Failure")
+    @Category({"NAR", "Motors"})
+    @Description("Motor controller config that failed every retry")
+    public static class ConfigFailure extends Event {
+        @Label("Device Id")
+        public int deviceId;
+        @Label("Attempts")
+        public int attempts;
+        @Label("Last Status")
+        public String status;
+    }
+
+    @Name("common.CallbackOverrun")
+    @Label("Callback Overrun")
+    @Category({"NAR", "Loop"})
+    @Description("NAR_Robot callback that ran longer than its period")
+    public static class CallbackOverrun extends Event {
+        @Label("Callback")
+        public String callback;
+        @Label("Period")
+        @Timespan(Timespan.MILLISECONDS)
+        public long period;
+    }
+
+    @Name("common.CallbackShed")
+    @Label("Callback Shed")
+    @Category({"NAR", "Loop"})
+    @Description("Low priority NAR_Robot callback deferred because its tick was over budget")
+    public static class CallbackShed extends Event {
+        @Label("Callback")
+        public String callback;
+    }
+
+    @Name("common.SwervePeriodic")
+    @Label("Swerve Periodic")
+    @Category({"NAR", "Loop"})
+    @Description("SwerveBase.periodic odometry update")
+    public static class SwervePeriodic extends Event {
+        @Label("Subsystem")
+        public String subsystem;
+    }
+}
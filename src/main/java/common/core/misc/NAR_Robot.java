@@ -1,14 +1,25 @@
 package common.core.misc;
 
+import java.util.ArrayList;
 import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+import common.core.misc.FlightEvents.CallbackOverrun;
+import common.core.misc.FlightEvents.CallbackShed;
+import common.core.subsystems.NAR_Subsystem;
 import edu.wpi.first.hal.DriverStationJNI;
 import edu.wpi.first.hal.HAL;
 import edu.wpi.first.hal.NotifierJNI;
 import edu.wpi.first.hal.FRCNetComm.tInstances;
 import edu.wpi.first.hal.FRCNetComm.tResourceType;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.IterativeRobotBase;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.Timer;
+import jdk.jfr.EventType;
 
 /**
  * Team 3128's Custom Robot class
@@ -27,27 +38,59 @@ import edu.wpi.first.wpilibj.Timer;
  */
 public class NAR_Robot extends IterativeRobotBase {
 
+    /**
+     * Order in which callbacks due at the same time run, and which are shed when a tick is over budget.
+     */
+    public enum Priority {
+        /** Runs before other callbacks due at the same time, ie. loopFunc. */
+        HIGH,
+        /** Always runs, the default. */
+        NORMAL,
+        /** Deferred to a later tick while the current one is over budget, ie. telemetry. */
+        LOW
+    }
+
     @SuppressWarnings("MemberName")
     static class Callback implements Comparable<Callback> {
         public Runnable func;
+        public String name;
+        public AllocationTracker.Counter allocations;
         public double period;
         public double expirationTime;
+        public double startTime;
+        public double offset;
+        public boolean autoPhase;
+        public double cost;
+        public Priority priority = Priority.NORMAL;
 
         /**
          * Construct a callback container.
          *
+         * @param name             Name of the callback, used by diagnostics.
          * @param func             The callback to run.
          * @param startTimeSeconds The common starting point for all callback scheduling
          *                         in seconds.
          * @param periodSeconds    The period at which to run the callback in seconds.
          * @param offsetSeconds    The offset from the common starting time in seconds.
          */
-        Callback(Runnable func, double startTimeSeconds, double periodSeconds, double offsetSeconds) {
+        Callback(String name, Runnable func, double startTimeSeconds, double periodSeconds, double offsetSeconds) {
+            this.name = name;
             this.func = func;
             this.period = periodSeconds;
-            this.expirationTime = startTimeSeconds
+            this.startTime = startTimeSeconds;
+            schedule(offsetSeconds);
+        }
+
+        /**
+         * Moves the callback to a new offset, running next in the period after the current one.
+         *
+         * @param offsetSeconds The offset from the common starting time in seconds.
+         */
+        void schedule(double offsetSeconds) {
+            this.offset = offsetSeconds;
+            this.expirationTime = startTime
                     + offsetSeconds
-                    + Math.floor((Timer.getFPGATimestamp() - startTimeSeconds) / this.period)
+                    + Math.floor((Timer.getFPGATimestamp() - startTime) / this.period)
                             * this.period
                     + this.period;
         }
@@ -68,8 +111,9 @@ public class NAR_Robot extends IterativeRobotBase {
         @Override
         public int compareTo(Callback rhs) {
             // Elements with sooner expiration times are sorted as lesser. The head of
-            // Java's PriorityQueue is the least element.
-            return Double.compare(expirationTime, rhs.expirationTime);
+            // Java's PriorityQueue is the least element. Ties go to the higher priority.
+            final int compare = Double.compare(expirationTime, rhs.expirationTime);
+            return compare != 0 ? compare : priority.compareTo(rhs.priority);
         }
     }
 
@@ -83,6 +127,20 @@ public class NAR_Robot extends IterativeRobotBase {
 
     private static final PriorityQueue<Callback> m_callbacks = new PriorityQueue<>();
 
+    private static final ConcurrentLinkedQueue<Runnable> m_mainLoopTasks = new ConcurrentLinkedQueue<>();
+
+    private static final ArrayList<Callback> m_deferred = new ArrayList<>();
+
+    private static double m_tickBudget;
+
+    private static final EventType OVERRUN_EVENT = EventType.getEventType(CallbackOverrun.class);
+
+    private static BaseStatusSignal[] m_loopSignals;
+
+    private static Callback m_loopCallback;
+
+    private volatile boolean m_running = true;
+
 
     /** Constructor for TimedRobot. */
     protected NAR_Robot() {
@@ -99,7 +157,13 @@ public class NAR_Robot extends IterativeRobotBase {
         m_startTime = Timer.getFPGATimestamp();
 
 
-        addPeriodic(this::loopFunc, period);
+        m_loopCallback = new Callback("loopFunc", () -> {
+            SensePhase.run();
+            loopFunc();
+        }, m_startTime, period, 0.0);
+        m_loopCallback.priority = Priority.HIGH;
+        m_callbacks.add(m_loopCallback);
+        m_tickBudget = 0.75 * period;
 
         
         NotifierJNI.setNotifierName(m_notifier, "NAR_Robot");
@@ -119,6 +183,10 @@ public class NAR_Robot extends IterativeRobotBase {
         
         robotInit();
 
+        if (ThreadControls.isEnabled()) {
+            ThreadControls.configureControl();
+        }
+
         if (isSimulation()) {
             simulationInit();
         }
@@ -128,6 +196,11 @@ public class NAR_Robot extends IterativeRobotBase {
         System.out.println("********** Robot program startup complete **********");
         DriverStationJNI.observeUserProgramStarting();
 
+        if (m_loopSignals != null) {
+            runSignalLoop();
+            return;
+        }
+
         // Loop forever, calling the appropriate mode-dependent function
         while (true) {
             // We don't have to check there's an element in the queue first because
@@ -141,27 +214,163 @@ public class NAR_Robot extends IterativeRobotBase {
             if (curTime == 0) {
                 break;
             }
+            final double tickStart = curTime / 1e6;
 
-            callback.func.run();
-
-            callback.expirationTime += callback.period;
-            m_callbacks.add(callback);
+            runDue(callback, tickStart);
 
             // Process all other callbacks that are ready to run
-            while ((long) (m_callbacks.peek().expirationTime * 1e6) <= curTime) {
-                callback = m_callbacks.poll();
+            runExpired(curTime, tickStart);
+
+            // Run work handed back from other threads
+            Runnable task;
+            while ((task = m_mainLoopTasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Main loop woken by the arrival of the signals set with {@link #setLoopSignals} instead of the notifier.
+     * loopFunc runs as soon as every signal has a new frame, the other callbacks run after it once their
+     * time has come.
+     */
+    private void runSignalLoop() {
+        m_callbacks.removeIf(callback -> callback == m_loopCallback);
+        final double timeout = 2 * m_loopCallback.period;
+        boolean reported = false;
+
+        while (m_running) {
+            final StatusCode status = BaseStatusSignal.waitForAll(timeout, m_loopSignals);
+            if (!m_running) {
+                break;
+            }
+
+            // Errors like signals on different buses return at once,
+            // wait for the next period on the notifier instead of spinning
+            if (!status.isOK() && status != StatusCode.RxTimeout) {
+                if (!reported) {
+                    DriverStation.reportError("Loop signals failed, falling back to the notifier: " + status.getName(), false);
+                    reported = true;
+                }
+                m_loopCallback.schedule(m_loopCallback.offset);
+                NotifierJNI.updateNotifierAlarm(m_notifier, (long) (m_loopCallback.expirationTime * 1e6));
+                if (NotifierJNI.waitForNotifierAlarm(m_notifier) == 0) {
+                    break;
+                }
+            }
+
+            final double tickStart = Timer.getFPGATimestamp();
+
+            // Run on a timeout too, so a missing device slows the loop down instead of stopping it
+            runCallback(m_loopCallback);
+
+            runExpired(RobotController.getFPGATime(), tickStart);
+
+            Runnable task;
+            while ((task = m_mainLoopTasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Runs every queued callback due by the given time, then the deferred ones while the tick has budget left.
+     *
+     * @param curTime   The wake-up time in microseconds.
+     * @param tickStart The wake-up time in seconds.
+     */
+    private static void runExpired(long curTime, double tickStart) {
+        while (!m_callbacks.isEmpty() && (long) (m_callbacks.peek().expirationTime * 1e6) <= curTime) {
+            runDue(m_callbacks.poll(), tickStart);
+        }
 
-                callback.func.run();
+        while (!m_deferred.isEmpty() && !overBudget(tickStart)) {
+            final Callback callback = m_deferred.remove(0);
+
+            runCallback(callback);
+            advance(callback);
+            m_callbacks.add(callback);
+        }
+    }
 
-                callback.expirationTime += callback.period;
-                m_callbacks.add(callback);
+    /**
+     * Runs a due callback and requeues it, or defers it if it is low priority and the tick is over budget.
+     *
+     * @param callback  The due callback, already removed from the queue.
+     * @param tickStart The wake-up time in seconds.
+     */
+    private static void runDue(Callback callback, double tickStart) {
+        if (callback.priority == Priority.LOW && overBudget(tickStart)) {
+            final CallbackShed event = new CallbackShed();
+            if (event.shouldCommit()) {
+                event.callback = callback.name;
+                event.commit();
             }
+            m_deferred.add(callback);
+            return;
+        }
+
+        runCallback(callback);
+        advance(callback);
+        m_callbacks.add(callback);
+    }
+
+    private static boolean overBudget(double tickStart) {
+        return Timer.getFPGATimestamp() - tickStart > m_tickBudget;
+    }
+
+    /**
+     * Moves a callback to its next period, collapsing any periods missed while it or others overran
+     * instead of replaying them back to back.
+     *
+     * @param callback The callback that just ran.
+     */
+    private static void advance(Callback callback) {
+        callback.expirationTime += callback.period;
+        final double now = Timer.getFPGATimestamp();
+        if (callback.expirationTime <= now) {
+            callback.expirationTime += (Math.floor((now - callback.expirationTime) / callback.period) + 1) * callback.period;
+        }
+    }
+
+    /**
+     * Runs a callback, counting its allocations when tracked and recording a flight recorder event
+     * if it takes longer than its period.
+     *
+     * @param callback The callback to run.
+     */
+    private static void runCallback(Callback callback) {
+        if (AllocationTracker.isEnabled() && callback.allocations == null) {
+            callback.allocations = AllocationTracker.counter(callback.name);
+        }
+        // Only create the event while recording, so callbacks allocate nothing otherwise
+        final boolean overruns = OVERRUN_EVENT.isEnabled();
+        final CallbackOverrun event = overruns ? new CallbackOverrun() : null;
+        if (!overruns && !PhaseBalancer.isEnabled()) {
+            final long allocated = AllocationTracker.start();
+            callback.func.run();
+            if (callback.allocations != null) AllocationTracker.stop(callback.allocations, allocated);
+            return;
+        }
+        final long start = System.nanoTime();
+        final long allocated = AllocationTracker.start();
+        if (overruns) event.begin();
+        callback.func.run();
+        if (overruns) event.end();
+        if (callback.allocations != null) AllocationTracker.stop(callback.allocations, allocated);
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+        callback.cost += (elapsed - callback.cost) * PhaseBalancer.COST_SMOOTHING;
+        if (overruns && elapsed > callback.period && event.shouldCommit()) {
+            event.callback = callback.name;
+            event.period = (long) (callback.period * 1000);
+            event.commit();
         }
     }
 
     /** Ends the main loop in startCompetition(). */
     @Override
     public void endCompetition() {
+        m_running = false;
         NotifierJNI.stopNotifier(m_notifier);
     }
 
@@ -177,7 +386,33 @@ public class NAR_Robot extends IterativeRobotBase {
      * @param periodSeconds The period at which to run the callback in seconds.
      */
     public static void addPeriodic(Runnable callback, double periodSeconds) {
-        m_callbacks.add(new Callback(callback, m_startTime, periodSeconds, 0.0));
+        addPeriodic(nameOf(callback), callback, periodSeconds);
+    }
+
+    /**
+     * Add a named callback to run at a specific period.
+     *
+     * @param name          Name of the callback, used by diagnostics.
+     * @param callback      The callback to run.
+     * @param periodSeconds The period at which to run the callback in seconds.
+     */
+    public static void addPeriodic(String name, Runnable callback, double periodSeconds) {
+        addPeriodic(name, callback, periodSeconds, Priority.NORMAL);
+    }
+
+    /**
+     * Add a named callback to run at a specific period with a priority.
+     *
+     * @param name          Name of the callback, used by diagnostics.
+     * @param callback      The callback to run.
+     * @param periodSeconds The period at which to run the callback in seconds.
+     * @param priority      The priority of the callback, LOW callbacks are deferred when a tick runs over budget.
+     */
+    public static void addPeriodic(String name, Runnable callback, double periodSeconds, Priority priority) {
+        final Callback added = new Callback(name, callback, m_startTime, periodSeconds, 0.0);
+        added.autoPhase = true;
+        added.priority = priority;
+        m_callbacks.add(added);
     }
 
     /**
@@ -196,6 +431,139 @@ public class NAR_Robot extends IterativeRobotBase {
      *                      to TimedRobot.
      */
     public static void addPeriodic(Runnable callback, double periodSeconds, double offsetSeconds) {
-        m_callbacks.add(new Callback(callback, m_startTime, periodSeconds, offsetSeconds));
+        addPeriodic(nameOf(callback), callback, periodSeconds, offsetSeconds);
+    }
+
+    /**
+     * Add a named callback to run at a specific period with a starting time offset.
+     *
+     * @param name          Name of the callback, used by diagnostics.
+     * @param callback      The callback to run.
+     * @param periodSeconds The period at which to run the callback in seconds.
+     * @param offsetSeconds The offset from the common starting time in seconds.
+     */
+    public static void addPeriodic(String name, Runnable callback, double periodSeconds, double offsetSeconds) {
+        m_callbacks.add(new Callback(name, callback, m_startTime, periodSeconds, offsetSeconds));
+    }
+
+    /**
+     * Set the time after a wake-up past which LOW priority callbacks are deferred to a later tick.
+     *
+     * <p>
+     * Defaults to three quarters of the loop period.
+     *
+     * @param budgetSeconds The per tick budget in seconds.
+     */
+    public static void setTickBudget(double budgetSeconds) {
+        m_tickBudget = budgetSeconds;
+    }
+
+    /**
+     * Spread callbacks added without an offset across the loop period by their measured run time.
+     *
+     * <p>
+     * loopFunc and callbacks with an explicit offset keep their phase. See {@link PhaseBalancer}.
+     */
+    public static void enableAutoPhase() {
+        PhaseBalancer.start();
+    }
+
+    /**
+     * Moves callbacks to the offsets chosen by the phase balancer.
+     */
+    static void rebalance() {
+        final ArrayList<Callback> callbacks = new ArrayList<>(m_callbacks);
+        if (m_callbacks.stream().noneMatch(callback -> callback == m_loopCallback)) callbacks.add(m_loopCallback);
+        final double[] offsets = PhaseBalancer.balance(callbacks, m_loopCallback.period);
+        for (int i = 0; i < offsets.length; i++) {
+            final Callback callback = callbacks.get(i);
+            if (offsets[i] == callback.offset) continue;
+            m_callbacks.removeIf(queued -> queued == callback);
+            callback.schedule(offsets[i]);
+            m_callbacks.add(callback);
+        }
+    }
+
+    /**
+     * Names a callback after the class that created it.
+     *
+     * @param callback The callback.
+     * @return The enclosing class name of a lambda, or the class name otherwise.
+     */
+    private static String nameOf(Runnable callback) {
+        final String name = callback.getClass().getName();
+        final int lambda = name.indexOf("$$Lambda");
+        return lambda > 0 ? name.substring(name.lastIndexOf('.', lambda) + 1, lambda) : name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Wake the main loop when a set of status signals all have new data, instead of on the notifier.
+     *
+     * <p>
+     * loopFunc then runs once per frame of the slowest signal, right after it arrives, so sensor to
+     * actuator latency is bounded by the CAN frame period. Other callbacks keep their periods but only
+     * run after a wake-up. If the signals stop arriving loopFunc still runs every two periods, and if
+     * waiting fails outright, ie. signals on different CAN buses, it runs once per period on the notifier.
+     * Call from the robot constructor or robotInit, before the main loop starts.
+     *
+     * @param signals The signals to wait for, ie. the drive motors' positions and the gyro yaw.
+     */
+    public static void setLoopSignals(BaseStatusSignal... signals) {
+        m_loopSignals = signals.length > 0 ? signals : null;
+    }
+
+    /**
+     * Add side effect free sensing work to run before every loopFunc.
+     *
+     * <p>
+     * Sense tasks run in parallel with each other on the main thread and a helper
+     * thread, and all finish before commands and periodics run. See {@link SensePhase}.
+     *
+     * @param task The sensing work.
+     */
+    public static void addSense(Runnable task) {
+        SensePhase.add(task);
+    }
+
+    /**
+     * Add a subsystem's {@link NAR_Subsystem#sense()} to the sensing phase.
+     *
+     * @param subsystem The subsystem.
+     */
+    public static void addSense(NAR_Subsystem subsystem) {
+        SensePhase.add(subsystem::sense);
+    }
+
+    /**
+     * Run the main loop at real-time priority on its own core, and library threads on the other.
+     *
+     * <p>
+     * Opt in from the robot constructor, before library threads start. See {@link ThreadControls}.
+     */
+    public static void enableRealTime() {
+        ThreadControls.enable();
+    }
+
+    /**
+     * Warm up the JIT on the hot swerve and motor paths while disabled.
+     *
+     * <p>
+     * Opt in from the robot constructor or robotInit. See {@link WarmUp}.
+     */
+    public static void enableWarmUp() {
+        WarmUp.start();
+    }
+
+    /**
+     * Run a task once on the main loop thread.
+     *
+     * <p>
+     * Safe to call from any thread. The task runs after the callbacks of the next
+     * loop iteration, so it can touch robot state without extra synchronization.
+     *
+     * @param task The task to run.
+     */
+    public static void runOnMainLoop(Runnable task) {
+        m_mainLoopTasks.add(task);
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package common.core.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import common.core.misc.NAR_Robot.Callback;
+
+/**
+ * Team 3128's automatic callback phase staggering.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Opt in with {@link NAR_Robot#enableAutoPhase()}. Every callback's run time is then measured and smoothed,
+ *      and every {@link #rebalancePeriod} seconds the callbacks added without an offset are moved to the phases
+ *      that keep the busiest tick lightest.
+ * <li> The loop period is split into {@link #slots} phases, a callback with a period of n phases can take any of
+ *      its n phases. loopFunc and callbacks added with an offset stay where they are but count towards the load.
+ * <li> A callback only moves when another phase lowers its busiest tick noticeably, so phases settle instead of
+ *      swapping back and forth.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class PhaseBalancer {
+
+    /** Phases per loop period. Read on every rebalance. */
+    public static int slots = 4;
+    /** Time between rebalances, in seconds. Read when auto phase is enabled. */
+    public static double rebalancePeriod = 5.0;
+
+    static final double COST_SMOOTHING = 0.05;
+    private static final int MAX_HYPERPERIOD = 2000;
+    private static final double MIN_IMPROVEMENT = 1E-5;
+    private static boolean enabled = false;
+
+    private PhaseBalancer() {}
+
+    /**
+     * Returns whether callbacks are being staggered.
+     * @return True after NAR_Robot.enableAutoPhase.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void start() {
+        if (enabled) return;
+        enabled = true;
+        NAR_Robot.addPeriodic("PhaseBalancer", NAR_Robot::rebalance, rebalancePeriod, 0.0);
+    }
+
+    /**
+     * Chooses offsets for callbacks from their measured costs.
+     * @param callbacks Every scheduled callback.
+     * @param loopPeriod Period of loopFunc in seconds.
+     * @return The offset of each callback, unchanged for fixed callbacks and ones already well placed.
+     */
+    static double[] balance(List<Callback> callbacks, double loopPeriod) {
+        final double slot = loopPeriod / Math.max(slots, 1);
+        final int count = callbacks.size();
+        final int[] lengths = new int[count];
+        final double[] offsets = new double[count];
+        int hyperperiod = 1;
+        for (int i = 0; i < count; i++) {
+            lengths[i] = Math.max(1, (int) Math.round(callbacks.get(i).period / slot));
+            hyperperiod = (int) Math.min(lcm(hyperperiod, lengths[i]), MAX_HYPERPERIOD);
+        }
+
+        // Place fixed callbacks first, then the most expensive movable ones while there is the most room
+        final ArrayList<Integer> order = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) order.add(i);
+        order.sort((a, b) -> {
+            final Callback first = callbacks.get(a), second = callbacks.get(b);
+            if (first.autoPhase != second.autoPhase) return first.autoPhase ? 1 : -1;
+            return Double.compare(second.cost, first.cost);
+        });
+
+        final double[] load = new double[hyperperiod];
+        for (final int i : order) {
+            final Callback callback = callbacks.get(i);
+            final int length = lengths[i];
+            final int current = Math.floorMod((int) Math.round(callback.offset / slot), length);
+            int phase = current;
+            if (callback.autoPhase) {
+                double best = peak(load, current, length);
+                for (int candidate = 0; candidate < Math.min(length, load.length); candidate++) {
+                    final double candidatePeak = peak(load, candidate, length);
+                    if (candidatePeak < best - MIN_IMPROVEMENT) {
+                        best = candidatePeak;
+                        phase = candidate;
+                    }
+                }
+            }
+            for (int tick = phase; tick < load.length; tick += length) {
+                load[tick] += callback.cost;
+            }
+            offsets[i] = phase == current ? callback.offset : phase * slot;
+        }
+        return offsets;
+    }
+
+    private static double peak(double[] load, int phase, int length) {
+        double peak = 0;
+        for (int tick = phase; tick < load.length; tick += length) {
+            peak = Math.max(peak, load[tick]);
+        }
+        return peak;
+    }
+
+    private static long lcm(long a, long b) {
+        long x = a, y = b;
+        while (y != 0) {
+            final long remainder = x % y;
+            x = y;
+            y = remainder;
+        }
+        return a / x * b;
+    }
+}
@@ -0,0 +1,105 @@
+package common.core.misc;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Team 3128's parallel sensing phase, run before every loopFunc.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Register side effect free work with {@link NAR_Robot#addSense(Runnable)}, ie. signal refreshes,
+ *      filtering, kinematics and estimator prediction. Tasks must not send anything to hardware or touch
+ *      state another sense task uses, actuation stays on the main thread in commands and periodics.
+ * <li> The main thread and {@link #workers} helper threads claim tasks until all are done, then the main thread
+ *      waits at a barrier, so commands always see the results of this loop.
+ * <li> With a single task or no workers the tasks run inline, exactly as if called from periodic.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class SensePhase {
+
+    /** Helper threads, one per spare core. Read when the first parallel phase runs. */
+    public static int workers = 1;
+
+    private static final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+    private static volatile Runnable[] current = new Runnable[0];
+    private static Runnable[] batch = new Runnable[0];
+    private static Thread[] threads;
+
+    // Batch length in the high 32 bits, next unclaimed index in the low 32 bits, so a claim
+    // left over from the previous loop can never take an index of the next one.
+    private static final AtomicLong claims = new AtomicLong();
+    private static final AtomicInteger remaining = new AtomicInteger();
+    private static final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private SensePhase() {}
+
+    static void add(Runnable task) {
+        tasks.add(task);
+        batch = tasks.toArray(new Runnable[0]);
+    }
+
+    static void run() {
+        final Runnable[] batch = SensePhase.batch;
+        if (batch.length == 0) return;
+        if (batch.length == 1 || workers <= 0) {
+            for (int i = 0; i < batch.length; i++) {
+                batch[i].run();
+            }
+            return;
+        }
+        if (threads == null) startWorkers();
+
+        current = batch;
+        remaining.set(batch.length);
+        claims.set((long) batch.length << 32);
+        for (int i = 0; i < threads.length; i++) {
+            LockSupport.unpark(threads[i]);
+        }
+
+        drain();
+        while (remaining.get() > 0) {
+            Thread.onSpinWait();
+        }
+
+        final Throwable thrown = failure.getAndSet(null);
+        if (thrown instanceof RuntimeException) throw (RuntimeException) thrown;
+        if (thrown instanceof Error) throw (Error) thrown;
+        if (thrown != null) throw new RuntimeException("Sense task failed", thrown);
+    }
+
+    private static void startWorkers() {
+        threads = new Thread[workers];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = BackgroundExecutor.poolThreadFactory("NAR_Sense").newThread(SensePhase::work);
+            threads[i].start();
+        }
+    }
+
+    private static void work() {
+        while (true) {
+            LockSupport.park();
+            drain();
+        }
+    }
+
+    private static void drain() {
+        while (true) {
+            final long claim = claims.getAndIncrement();
+            final int index = (int) claim;
+            if (index >= (int) (claim >>> 32)) return;
+            try {
+                current[index].run();
+            } catch (Throwable thrown) {
+                failure.compareAndSet(null, thrown);
+            } finally {
+                remaining.decrementAndGet();
+            }
+        }
+    }
+}
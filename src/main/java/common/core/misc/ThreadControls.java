@@ -0,0 +1,119 @@
+package common.core.misc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Threads;
+
+/**
+ * Team 3128's real-time priority and CPU affinity controls.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Opt in with {@link NAR_Robot#enableRealTime()} from the robot constructor. The main loop then runs at
+ *      real-time priority {@link #controlPriority} on {@link #controlCore}, and the long lived library thread
+ *      pools, the background executor and the sense phase helpers, are pinned to {@link #housekeepingCore}
+ *      once when their threads start. Other threads inherit the affinity of the thread creating them.
+ * <li> Affinity uses taskset on the thread's Linux id and is skipped on other platforms. If taskset is missing
+ *      or fails, that is reported once and no further processes are started. Priority uses WPILib's Threads,
+ *      which only works on the roboRIO.
+ * <li> Keep the control priority low, a busy loop at a high real-time priority starves the CAN and
+ *      NetworkTables threads sharing its core.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class ThreadControls {
+
+    /** Real-time priority of the main loop, 1 to 99. */
+    public static int controlPriority = 15;
+    /** Core the main loop runs on. */
+    public static int controlCore = 0;
+    /** Core library owned background threads run on. */
+    public static int housekeepingCore = 1;
+
+    private static final boolean linux = System.getProperty("os.name", "").startsWith("Linux");
+    private static volatile boolean enabled = false;
+    private static volatile boolean affinityFailed = false;
+
+    private ThreadControls() {}
+
+    /**
+     * Returns whether real-time controls are enabled.
+     * @return True after NAR_Robot.enableRealTime.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Sets the current thread's scheduling priority.
+     * @param realTime True for real-time scheduling, false for the normal scheduler.
+     * @param priority Real-time priority from 1 to 99, ignored when not real-time.
+     * @return True if the priority was changed.
+     */
+    public static boolean setPriority(boolean realTime, int priority) {
+        try {
+            return Threads.setCurrentThreadPriority(realTime, priority);
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Restricts the current thread to the given cores.
+     * @param cores Cores the thread may run on.
+     * @return True if the affinity was changed.
+     */
+    public static boolean setAffinity(int... cores) {
+        if (!linux || cores.length == 0 || affinityFailed) return false;
+        final StringBuilder list = new StringBuilder();
+        for (int i = 0; i < cores.length; i++) {
+            if (i > 0) list.append(',');
+            list.append(cores[i]);
+        }
+        try {
+            final String self = Files.readSymbolicLink(Paths.get("/proc/thread-self")).toString();
+            final String tid = self.substring(self.lastIndexOf('/') + 1);
+            final Process taskset = new ProcessBuilder("taskset", "-p", "-c", list.toString(), tid)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            if (taskset.waitFor() == 0) return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // taskset missing, fall through
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        affinityFailed = true;
+        DriverStation.reportWarning("CPU affinity unavailable, taskset failed, threads stay unpinned", false);
+        return false;
+    }
+
+    /**
+     * Applies the control priority and core to the current thread, called by NAR_Robot on the main loop thread.
+     */
+    static void configureControl() {
+        final boolean priority = setPriority(true, controlPriority);
+        final boolean affinity = setAffinity(controlCore);
+        if (!priority || !affinity) {
+            DriverStation.reportWarning("Main loop real-time setup incomplete, priority " + (priority ? "set" : "unchanged")
+                + ", affinity " + (affinity ? "set" : "unchanged"), false);
+        }
+    }
+
+    /**
+     * Pins the current thread to the housekeeping core if real-time controls are enabled, called once
+     * by each pool thread when it starts.
+     */
+    static void configureHousekeeping() {
+        if (enabled) setAffinity(housekeepingCore);
+    }
+}
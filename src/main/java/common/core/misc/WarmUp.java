@@ -0,0 +1,133 @@
+package common.core.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import common.core.swerve.CTREModuleState;
+import common.hardware.motorcontroller.NAR_Motor;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Team 3128's JIT warm-up while the robot is disabled.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Opt in with {@link NAR_Robot#enableWarmUp()}. Tasks run on the main loop only while disabled,
+ *      for at most {@link #budget} seconds per loop, until each has run {@link #iterations} times.
+ * <li> The built in tasks run the swerve kinematics, module optimization and pose estimator math on made up
+ *      data, and each robot motor's real set and getter paths through NAR_Motor.warmUp. Nothing is sent to
+ *      hardware, motors that cannot skip their writes are left alone.
+ * <li> Add robot specific paths with {@link #add(Runnable)}, they must not move anything.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class WarmUp {
+
+    /** Runs of each task before warm-up stops, enough for the JIT to compile the hot methods. */
+    public static int iterations = 20000;
+    /** Time spent warming up per loop, in seconds. */
+    public static double budget = 0.004;
+
+    private static final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+    private static int completed = 0;
+    private static boolean started = false;
+
+    private WarmUp() {}
+
+    /**
+     * Adds a task to run during warm-up.
+     * @param task Code exercising a hot path on stand-in data.
+     */
+    public static void add(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Returns whether every task has run the full number of iterations.
+     * @return True once warm-up is done.
+     */
+    public static boolean isDone() {
+        return started && completed >= iterations;
+    }
+
+    static void start() {
+        if (started) return;
+        started = true;
+        tasks.add(0, new SwerveTask());
+        tasks.add(1, new MotorTask());
+        NAR_Robot.addPeriodic("WarmUp", WarmUp::run, NAR_Robot.kDefaultPeriod, NAR_Robot.Priority.LOW);
+    }
+
+    private static void run() {
+        if (completed >= iterations || !DriverStation.isDisabled()) return;
+        final double end = Timer.getFPGATimestamp() + budget;
+        while (completed < iterations && Timer.getFPGATimestamp() < end) {
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.get(i).run();
+            }
+            completed++;
+        }
+        if (completed >= iterations) System.out.println("Warm-up complete after " + completed + " iterations");
+    }
+
+    /**
+     * Drives a stand-in swerve through the same math as SwerveBase.
+     */
+    private static class SwerveTask implements Runnable {
+        private static final double DT = 0.02;
+        private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(
+            new Translation2d(0.3, 0.3), new Translation2d(0.3, -0.3), new Translation2d(-0.3, 0.3), new Translation2d(-0.3, -0.3));
+        private final SwerveModulePosition[] positions = {
+            new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition(), new SwerveModulePosition()
+        };
+        private final SwerveDrivePoseEstimator estimator = new SwerveDrivePoseEstimator(kinematics, new Rotation2d(), positions, new Pose2d());
+        private Rotation2d heading = new Rotation2d();
+        private double time = 0;
+        private int count = 0;
+
+        @Override
+        public void run() {
+            time += DT;
+            ChassisSpeeds velocity = new ChassisSpeeds(Math.cos(time), Math.sin(time), Math.sin(0.7 * time));
+            velocity = ChassisSpeeds.fromFieldRelativeSpeeds(velocity, heading);
+            velocity = ChassisSpeeds.discretize(velocity, DT);
+            final SwerveModuleState[] states = kinematics.toSwerveModuleStates(velocity);
+            SwerveDriveKinematics.desaturateWheelSpeeds(states, 4.5);
+            for (int i = 0; i < states.length; i++) {
+                states[i] = CTREModuleState.optimize(states[i], positions[i].angle);
+                positions[i] = new SwerveModulePosition(positions[i].distanceMeters + states[i].speedMetersPerSecond * DT, states[i].angle);
+            }
+            heading = heading.plus(Rotation2d.fromRadians(kinematics.toChassisSpeeds(states).omegaRadiansPerSecond * DT));
+            estimator.update(heading, positions);
+            if (++count % 10 == 0) estimator.addVisionMeasurement(estimator.getEstimatedPosition(), Timer.getFPGATimestamp() - DT);
+        }
+    }
+
+    /**
+     * Sends changing setpoints through each robot motor's real write path, one motor per run, with nothing
+     * sent to hardware.
+     */
+    private static class MotorTask implements Runnable {
+        private double time = 0;
+        private int index = 0;
+
+        @Override
+        public void run() {
+            final List<NAR_Motor> motors = NAR_Motor.getMotors();
+            if (motors.isEmpty()) return;
+            time += 0.02;
+            index = (index + 1) % motors.size();
+            motors.get(index).warmUp(time);
+        }
+    }
+}
@@ -27,4 +27,10 @@ public interface NAR_Subsystem extends Subsystem{
     public void setNeutralMode(Neutral mode);
 
     public double getVolts();
+
+    /**
+     * Side effect free sensor reads and filtering, run in parallel with other subsystems before commands
+     * once registered with NAR_Robot.addSense. Must not send anything to hardware.
+     */
+    public default void sense() {}
 }
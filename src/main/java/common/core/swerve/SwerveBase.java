@@ -1,9 +1,14 @@
 package common.core.swerve;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.DoubleSupplier;
 
+import common.core.misc.AllocationTracker;
+import common.core.misc.FlightEvents.SwervePeriodic;
 import common.hardware.motorcontroller.NAR_Motor;
 import common.hardware.motorcontroller.NAR_Motor.Control;
+import common.hardware.motorcontroller.NAR_TalonFX;
 import common.utility.sysid.CmdSysId;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.Matrix;
@@ -20,6 +25,7 @@ import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import jdk.jfr.EventType;
 
 public abstract class SwerveBase extends SubsystemBase {
 
@@ -28,10 +34,35 @@ public abstract class SwerveBase extends SubsystemBase {
     protected double dtConstant = 0.009;
     public double throttle = 1;
 
+    /** Discretize with the measured time between assignments instead of dtConstant. */
+    public boolean measuredDiscretization = false;
+    /** Time from assigning a velocity until the modules act on it, in seconds. Measured unless disabled. */
+    public double actuationLatency = 0;
+    /** Measure actuationLatency from drive speed steps, set false to use a fixed value. */
+    public boolean measureActuationLatency = true;
+    /** Smallest commanded drive speed step timed for actuation latency, in meters per second. */
+    protected double latencyProbeStep = 0.5;
+    /** Longest measured dt trusted, longer gaps (ie. after disabling) fall back to dtConstant. */
+    protected double maxMeasuredDt = 0.1;
+    private DoubleSupplier sensorLatency = ()-> 0;
+    private double lastAssignTime = Double.NaN;
+    private double measuredDt = Double.NaN;
+    private double lastCommandedSpeed = 0;
+    private double probeTime = Double.NaN;
+    private double probeStartSpeed;
+    private double probeStep;
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double LATENCY_RESPONSE_FRACTION = 0.1;
+    private static final double MAX_ACTUATION_LATENCY = 0.1;
+
     protected final SwerveDriveKinematics kinematics;
     protected SwerveDrivePoseEstimator odometry;
     protected final SwerveModule[] modules;
     private Pose2d estimatedPose;
+    private AllocationTracker.Counter periodicAllocations;
+
+    private static final EventType PERIODIC_EVENT = EventType.getEventType(SwervePeriodic.class);
 
     public double maxSpeed;
 
@@ -80,11 +111,86 @@ public abstract class SwerveBase extends SubsystemBase {
      * @param velocity requested velocity
      */
     public void assign(ChassisSpeeds velocity) {
+        if(measuredDiscretization) {
+            assignMeasured(velocity);
+            return;
+        }
         if(fieldRelative) velocity = ChassisSpeeds.fromFieldRelativeSpeeds(velocity, getGyroRotation2d()); // convert to field relative if applicable
         if(chassisVelocityCorrection) velocity = ChassisSpeeds.discretize(velocity, dtConstant);
         setModuleStates(kinematics.toSwerveModuleStates(velocity.times(throttle)));
     }
 
+    /**
+     * Assigns the requested velocity using the measured time between assignments as the discretization
+     * period, and the heading extrapolated by the commanded rotation to when the modules act on it.
+     * @param velocity requested velocity
+     */
+    private void assignMeasured(ChassisSpeeds velocity) {
+        final double now = Timer.getFPGATimestamp();
+        final double dt = now - lastAssignTime;
+        measuredDt = dt > 0 && dt <= maxMeasuredDt ? dt : dtConstant;
+        lastAssignTime = now;
+
+        if(fieldRelative) {
+            // the gyro reading is sensorLatency old and the modules act actuationLatency from now
+            final double latency = sensorLatency.getAsDouble() + actuationLatency;
+            final Rotation2d heading = getGyroRotation2d().plus(Rotation2d.fromRadians(velocity.omegaRadiansPerSecond * latency));
+            velocity = ChassisSpeeds.fromFieldRelativeSpeeds(velocity, heading);
+        }
+        if(chassisVelocityCorrection) velocity = ChassisSpeeds.discretize(velocity, measuredDt);
+        final SwerveModuleState[] states = kinematics.toSwerveModuleStates(velocity.times(throttle));
+        setModuleStates(states);
+        if(measureActuationLatency) startLatencyProbe(now, Math.abs(states[0].speedMetersPerSecond));
+    }
+
+    /**
+     * Starts timing a drive speed step on the first module, the response is detected in periodic.
+     * @param now Time of the assignment in seconds.
+     * @param commanded Desaturated speed assigned to the first module in meters per second.
+     */
+    private void startLatencyProbe(double now, double commanded) {
+        final double step = commanded - lastCommandedSpeed;
+        lastCommandedSpeed = commanded;
+        if (!Double.isNaN(probeTime) || Math.abs(step) < latencyProbeStep) return;
+        probeTime = now;
+        probeStep = step;
+        probeStartSpeed = Math.abs(modules[0].getDriveMotor().getVelocity());
+    }
+
+    /**
+     * Ends a probe once the drive speed has moved a fraction of the step, timing the response by the
+     * signal's timestamp and smoothing it into actuationLatency.
+     */
+    private void updateLatencyProbe() {
+        if (Double.isNaN(probeTime)) return;
+        final NAR_Motor drive = modules[0].getDriveMotor();
+        final double response = (Math.abs(drive.getVelocity()) - probeStartSpeed) * Math.signum(probeStep);
+        final double now = Timer.getFPGATimestamp();
+        if (response >= Math.abs(probeStep) * LATENCY_RESPONSE_FRACTION) {
+            final double sample = now - drive.getDataAge() - probeTime;
+            if (sample >= 0) actuationLatency += LATENCY_SMOOTHING * (sample - actuationLatency);
+            probeTime = Double.NaN;
+        } else if (now - probeTime > MAX_ACTUATION_LATENCY) {
+            probeTime = Double.NaN;
+        }
+    }
+
+    /**
+     * Sets the source of the gyro's sensor latency, ie. the age of a Pigeon2 yaw signal.
+     * @param latency Supplier of the age of the heading returned by getYaw, in seconds.
+     */
+    public void setSensorLatency(DoubleSupplier latency) {
+        sensorLatency = latency;
+    }
+
+    /**
+     * Returns the discretization period used by the last measured assignment.
+     * @return Time between the last two assignments in seconds, or NaN before measured discretization runs.
+     */
+    public double getMeasuredDt() {
+        return measuredDt;
+    }
+
     public void stop() {
         for (SwerveModule module : modules) {
             module.stop();
@@ -160,8 +266,21 @@ public abstract class SwerveBase extends SubsystemBase {
 
     @Override
     public void periodic() {
+        if (AllocationTracker.isEnabled() && periodicAllocations == null) {
+            periodicAllocations = AllocationTracker.counter(getName() + ".periodic");
+        }
+        // Only create the event while recording, so periodic allocates nothing otherwise
+        final SwervePeriodic event = PERIODIC_EVENT.isEnabled() ? new SwervePeriodic() : null;
+        final long allocated = AllocationTracker.start();
+        if (event != null) event.begin();
         odometry.update(getGyroRotation2d(), getPositions());
         estimatedPose = odometry.getEstimatedPosition();
+        updateLatencyProbe();
+        if (periodicAllocations != null) AllocationTracker.stop(periodicAllocations, allocated);
+        if (event != null && event.shouldCommit()) {
+            event.subsystem = getName();
+            event.commit();
+        }
     }
 
     public void resetAll() {
@@ -312,6 +431,29 @@ public abstract class SwerveBase extends SubsystemBase {
         );
     }
 
+    /**
+     * Characterizes the drive motors, recording every TalonFX drive motor's timestamped signals
+     * at a high rate and averaging them.
+     * @param startDelay Delay before the voltage ramp starts.
+     * @param rampRate Rate at which voltage increases.
+     * @param targetPosition Distance to travel before the test ends.
+     * @param captureFrequency Signal update frequency while the test runs, ie. 250 to 1000.
+     * @return Command running the test.
+     */
+    public Command characterize(double startDelay, double rampRate, double targetPosition, double captureFrequency) {
+        final ArrayList<NAR_TalonFX> driveMotors = new ArrayList<NAR_TalonFX>();
+        for (final SwerveModule module : modules) {
+            if (module.getDriveMotor() instanceof NAR_TalonFX) {
+                driveMotors.add((NAR_TalonFX) module.getDriveMotor());
+            }
+        }
+        final CmdSysId command = (CmdSysId) characterize(startDelay, rampRate, targetPosition);
+        if (!driveMotors.isEmpty()) {
+            command.setHighRateCapture(captureFrequency, driveMotors.toArray(new NAR_TalonFX[0]));
+        }
+        return command;
+    }
+
     public Command characterizeTranslation(double startDelay, double rampRate, double targetPosition) {
         return characterize(startDelay, rampRate, targetPosition).beforeStarting(()-> zeroLock());
     }
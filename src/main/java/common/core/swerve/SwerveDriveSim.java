@@ -0,0 +1,318 @@
+package common.core.swerve;
+
+import common.core.controllers.PIDFFConfig;
+import common.core.swerve.SwerveModuleConfig.SwerveMotorConfig;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Team 3128's headless physics simulation of a swerve drivetrain.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Each module has a drive and steer DC motor plant, geared by the distance factors of the
+ *      {@link SwerveModuleConfig} motor configs and limited by their stator limits.
+ * <li> The drive velocity and steer position loops use the configs' PIDFFConfig gains on the error in the
+ *      units NAR_Motor sends to the motor controller, running once per substep like the onboard loop.
+ *      Steering wraps the error like ContinuousWrap.
+ * <li> Wheel force is clamped to the traction of a quarter of the robot's weight, then the wheel
+ *      velocities are projected onto the nearest rigid body motion, which is integrated into the pose
+ *      and the simulated gyro.
+ * <li> Nothing touches the HAL or hardware, so it can be stepped at any fixed dt from a plain JVM.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class SwerveDriveSim {
+
+    private static final double GRAVITY = 9.81;
+
+    private class Module {
+        private final Translation2d location;
+        private final double driveFactor;
+        private final double driveTimeFactor;
+        private final double driveVoltage;
+        private final double driveStatorLimit;
+        private final PIDFFConfig drivePID;
+        private final SimpleMotorFeedforward feedforward;
+        private final double angleFactor;
+        private final double angleVoltage;
+        private final double angleStatorLimit;
+        private final PIDFFConfig anglePID;
+        private final double maxSpeed;
+
+        private double speed = 0;
+        private double distance = 0;
+        private double angle = 0;
+        private double steerRate = 0;
+
+        private double targetSpeed = 0;
+        private double targetAngle = 0;
+        private double driveFeedforward = 0;
+        private double driveIntegral = 0;
+        private double drivePrevError = 0;
+        private double angleIntegral = 0;
+        private double anglePrevError = 0;
+
+        private Module(Translation2d location, SwerveModuleConfig config) {
+            this.location = location;
+            final SwerveMotorConfig drive = config.driveConfig;
+            final SwerveMotorConfig steer = config.angleConfig;
+            driveFactor = drive.motorConfig.distanceFactor;
+            driveTimeFactor = drive.motorConfig.timeFactor;
+            driveVoltage = Math.min(drive.motorConfig.voltageCompensation, simConfig.batteryVoltage);
+            driveStatorLimit = drive.motorConfig.statorLimit;
+            drivePID = drive.pidffConfig;
+            feedforward = new SimpleMotorFeedforward(drivePID.getkS(), drivePID.getkV(), drivePID.getkA());
+            angleFactor = steer.motorConfig.distanceFactor;
+            angleVoltage = Math.min(steer.motorConfig.voltageCompensation, simConfig.batteryVoltage);
+            angleStatorLimit = steer.motorConfig.statorLimit;
+            anglePID = steer.pidffConfig;
+            maxSpeed = config.maxSpeed;
+        }
+
+        /**
+         * Sets the targets the same way as SwerveModule.setDesiredState
+         */
+        private void setDesiredState(SwerveModuleState desiredState) {
+            desiredState = CTREModuleState.optimize(desiredState, getAngle());
+            if (Math.abs(desiredState.speedMetersPerSecond) > maxSpeed * 0.025) targetAngle = desiredState.angle.getDegrees();
+            targetSpeed = desiredState.speedMetersPerSecond;
+            driveFeedforward = feedforward.calculate(targetSpeed);
+        }
+
+        private void step(double dt) {
+            // steer position loop, error in rotor rotations wrapped to the shortest path
+            final double angleError = MathUtil.inputModulus(targetAngle - angle, -180, 180) / angleFactor;
+            angleIntegral += angleError * dt;
+            final double angleVolts = MathUtil.clamp(anglePID.kP * angleError + anglePID.kI * angleIntegral
+                + anglePID.kD * (angleError - anglePrevError) / dt, -angleVoltage, angleVoltage);
+            anglePrevError = angleError;
+
+            final double steerRatio = 360.0 / angleFactor;
+            final double steerRotorSpeed = Math.toRadians(steerRate) * steerRatio;
+            final double steerCurrent = MathUtil.clamp(simConfig.steerMotor.getCurrent(steerRotorSpeed, angleVolts), -angleStatorLimit, angleStatorLimit);
+            final double steerAcceleration = simConfig.steerMotor.getTorque(steerCurrent) * steerRatio / simConfig.steerInertia;
+            steerRate += Math.toDegrees(steerAcceleration) * dt;
+            angle += steerRate * dt;
+
+            // drive velocity loop, error in the units sent to the motor controller
+            final double driveError = (targetSpeed - speed) / driveFactor * driveTimeFactor;
+            driveIntegral += driveError * dt;
+            final double driveVolts = MathUtil.clamp(driveFeedforward + drivePID.kP * driveError + drivePID.kI * driveIntegral
+                + drivePID.kD * (driveError - drivePrevError) / dt, -driveVoltage, driveVoltage);
+            drivePrevError = driveError;
+
+            final double driveRatio = 2 * Math.PI / driveFactor;
+            final double driveCurrent = MathUtil.clamp(simConfig.driveMotor.getCurrent(speed * driveRatio, driveVolts), -driveStatorLimit, driveStatorLimit);
+            final double traction = simConfig.wheelFriction * simConfig.massKg * GRAVITY / modules.length;
+            final double force = MathUtil.clamp(simConfig.driveMotor.getTorque(driveCurrent) * driveRatio, -traction, traction);
+            speed += force / (simConfig.massKg / modules.length) * dt;
+        }
+
+        private Rotation2d getAngle() {
+            return Rotation2d.fromDegrees(MathUtil.inputModulus(angle, -180, 180));
+        }
+    }
+
+    private final SwerveDriveSimConfig simConfig;
+    private final SwerveDriveKinematics kinematics;
+    private final Module[] modules;
+    private final Translation2d centroid;
+    private final double radiusSquaredSum;
+    private final double maxSpeed;
+
+    private double x = 0;
+    private double y = 0;
+    private double heading = 0;
+    private double gyroOffset = 0;
+    private double vx = 0;
+    private double vy = 0;
+    private double omega = 0;
+    private double time = 0;
+
+    /**
+     * Creates a new swerve drivetrain simulation
+     * @param simConfig Physical settings of the robot.
+     * @param moduleLocations Location of each module relative to the robot center, in meters.
+     * @param configs Settings for each module, in the same order as the locations.
+     */
+    public SwerveDriveSim(SwerveDriveSimConfig simConfig, Translation2d[] moduleLocations, SwerveModuleConfig... configs) {
+        if (moduleLocations.length != configs.length) throw new IllegalArgumentException("Each module needs a location");
+        this.simConfig = simConfig;
+        kinematics = new SwerveDriveKinematics(moduleLocations);
+        maxSpeed = configs[0].maxSpeed;
+
+        modules = new Module[configs.length];
+        Translation2d sum = new Translation2d();
+        for (int i = 0; i < configs.length; i++) {
+            modules[i] = new Module(moduleLocations[i], configs[i]);
+            sum = sum.plus(moduleLocations[i]);
+        }
+        centroid = sum.div(configs.length);
+        double radiusSquared = 0;
+        for (final Module module : modules) {
+            final Translation2d r = module.location.minus(centroid);
+            radiusSquared += r.getX() * r.getX() + r.getY() * r.getY();
+        }
+        radiusSquaredSum = radiusSquared;
+    }
+
+    /**
+     * Sets robot relative speeds, converted to module states by the kinematics
+     * @param velocity Robot relative velocity.
+     */
+    public void drive(ChassisSpeeds velocity) {
+        setModuleStates(kinematics.toSwerveModuleStates(velocity));
+    }
+
+    /**
+     * Sets the module targets the same way as SwerveBase.setModuleStates
+     * @param desiredStates Desired state of each module.
+     */
+    public void setModuleStates(SwerveModuleState[] desiredStates) {
+        SwerveDriveKinematics.desaturateWheelSpeeds(desiredStates, maxSpeed);
+        for (int i = 0; i < modules.length; i++) {
+            modules[i].setDesiredState(desiredStates[i]);
+        }
+    }
+
+    /**
+     * Advances the simulation, split into substeps no longer than the config's maxSubstep
+     * @param dt Time to advance in seconds.
+     */
+    public void step(double dt) {
+        final int substeps = Math.max(1, (int) Math.ceil(dt / simConfig.maxSubstep - 1E-9));
+        final double h = dt / substeps;
+        for (int i = 0; i < substeps; i++) {
+            substep(h);
+        }
+        time += dt;
+    }
+
+    private void substep(double dt) {
+        double sumX = 0;
+        double sumY = 0;
+        double angular = 0;
+        for (final Module module : modules) {
+            module.step(dt);
+            final double radians = Math.toRadians(module.angle);
+            final double wheelX = module.speed * Math.cos(radians);
+            final double wheelY = module.speed * Math.sin(radians);
+            final Translation2d r = module.location.minus(centroid);
+            sumX += wheelX;
+            sumY += wheelY;
+            angular += r.getX() * wheelY - r.getY() * wheelX;
+        }
+
+        // least squares rigid body motion about the module centroid
+        omega = radiusSquaredSum > 0 ? angular / radiusSquaredSum : 0;
+        vx = sumX / modules.length + omega * centroid.getY();
+        vy = sumY / modules.length - omega * centroid.getX();
+
+        // wheels can only move with the body, the rest is lost to scrub
+        for (final Module module : modules) {
+            final double radians = Math.toRadians(module.angle);
+            final double wheelX = vx - omega * module.location.getY();
+            final double wheelY = vy + omega * module.location.getX();
+            module.speed = wheelX * Math.cos(radians) + wheelY * Math.sin(radians);
+            module.distance += module.speed * dt;
+        }
+
+        final double midHeading = heading + omega * dt / 2;
+        final double cos = Math.cos(midHeading);
+        final double sin = Math.sin(midHeading);
+        x += (vx * cos - vy * sin) * dt;
+        y += (vx * sin + vy * cos) * dt;
+        heading += omega * dt;
+    }
+
+    /**
+     * Returns the simulated module states, as SwerveModule.getState would read them
+     * @return State of each module.
+     */
+    public SwerveModuleState[] getModuleStates() {
+        final SwerveModuleState[] states = new SwerveModuleState[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            states[i] = new SwerveModuleState(modules[i].speed, modules[i].getAngle());
+        }
+        return states;
+    }
+
+    /**
+     * Returns the simulated module positions, as SwerveModule.getModulePosition would read them
+     * @return Position of each module.
+     */
+    public SwerveModulePosition[] getModulePositions() {
+        final SwerveModulePosition[] positions = new SwerveModulePosition[modules.length];
+        for (int i = 0; i < modules.length; i++) {
+            positions[i] = new SwerveModulePosition(modules[i].distance, modules[i].getAngle());
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the simulated gyro yaw, counter-clockwise positive
+     * @return Yaw in degrees
+     */
+    public double getYaw() {
+        return Math.toDegrees(heading) + gyroOffset;
+    }
+
+    /**
+     * Resets the simulated gyro
+     * @param reset Yaw to report at the current heading, in degrees
+     */
+    public void resetGyro(double reset) {
+        gyroOffset = reset - Math.toDegrees(heading);
+    }
+
+    /**
+     * Returns the true pose of the robot
+     * @return Pose on the field
+     */
+    public Pose2d getPose() {
+        return new Pose2d(x, y, Rotation2d.fromRadians(heading));
+    }
+
+    /**
+     * Moves the robot without changing its motion
+     * @param pose Pose on the field
+     */
+    public void setPose(Pose2d pose) {
+        x = pose.getX();
+        y = pose.getY();
+        heading = pose.getRotation().getRadians();
+    }
+
+    /**
+     * Returns the true robot relative velocity
+     * @return Robot relative velocity
+     */
+    public ChassisSpeeds getRobotVelocity() {
+        return new ChassisSpeeds(vx, vy, omega);
+    }
+
+    /**
+     * Returns the kinematics of the simulated modules
+     * @return The kinematics
+     */
+    public SwerveDriveKinematics getKinematics() {
+        return kinematics;
+    }
+
+    /**
+     * Returns the simulated time
+     * @return Seconds stepped so far
+     */
+    public double getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,47 @@
+package common.core.swerve;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+
+/**
+ * Physical settings used by {@link SwerveDriveSim}.
+ * @since 2025 Reefscape
+ */
+public class SwerveDriveSimConfig {
+
+    public final double massKg;
+    public final double wheelFriction;
+    public final DCMotor driveMotor;
+    public final DCMotor steerMotor;
+    public final double steerInertia;
+    public final double batteryVoltage;
+    public final double maxSubstep;
+
+    /**
+     * Creates a new swerve simulation config
+     * @param massKg Mass of the robot in kilograms
+     * @param wheelFriction Coefficient of friction between the wheels and the carpet
+     * @param driveMotor Drive motor of one module
+     * @param steerMotor Steer motor of one module
+     * @param steerInertia Moment of inertia of one module about its steering axis, in kg m^2
+     * @param batteryVoltage Voltage available to the motors
+     * @param maxSubstep Longest physics step in seconds, controllers run once per substep
+     */
+    public SwerveDriveSimConfig(double massKg, double wheelFriction, DCMotor driveMotor, DCMotor steerMotor, double steerInertia, double batteryVoltage, double maxSubstep) {
+        this.massKg = massKg;
+        this.wheelFriction = wheelFriction;
+        this.driveMotor = driveMotor;
+        this.steerMotor = steerMotor;
+        this.steerInertia = steerInertia;
+        this.batteryVoltage = batteryVoltage;
+        this.maxSubstep = maxSubstep;
+    }
+
+    /**
+     * Creates a new swerve simulation config with Kraken X60 motors and 1 ms substeps
+     * @param massKg Mass of the robot in kilograms
+     * @param wheelFriction Coefficient of friction between the wheels and the carpet
+     */
+    public SwerveDriveSimConfig(double massKg, double wheelFriction) {
+        this(massKg, wheelFriction, DCMotor.getKrakenX60(1), DCMotor.getKrakenX60(1), 0.004, 12, 0.001);
+    }
+}
@@ -5,20 +5,21 @@ import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.units.Units;
 import edu.wpi.first.units.measure.Angle;
 
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.MagnetSensorConfigs;
 import com.ctre.phoenix6.hardware.CANcoder;
 import com.ctre.phoenix6.signals.SensorDirectionValue;
 import common.core.controllers.PIDFFConfig;
+import common.core.controllers.TunableGains;
+import common.core.swerve.SwerveModuleConfig.AzimuthFeedback;
 import common.core.swerve.SwerveModuleConfig.SwerveEncoderConfig;
 import common.core.swerve.SwerveModuleConfig.SwerveMotorConfig;
 import common.hardware.motorcontroller.NAR_Motor;
 import common.hardware.motorcontroller.NAR_Motor.Control;
 import common.hardware.motorcontroller.NAR_Motor.Neutral;
-
-import java.util.function.Supplier;
+import common.hardware.motorcontroller.NAR_TalonFX;
 
 
 /**
@@ -29,6 +30,8 @@ import java.util.function.Supplier;
 public class SwerveModule {
 
     public static boolean shouldOptimizeCAN = true;
+    public static boolean useOnboardFeedforward = false;
+    public static boolean useLatencyCompensation = false;
 
     public final int moduleNumber;
     private final NAR_Motor angleMotor;
@@ -37,15 +40,15 @@ public class SwerveModule {
     private final SwerveMotorConfig driveConfig;
     private final SwerveMotorConfig angleConfig;
     private final SwerveEncoderConfig encoderConfig;
+    private final boolean remoteFeedback;
 
-
-    private final SimpleMotorFeedforward feedforward;
+    private SimpleMotorFeedforward feedforward;
 
     private final double maxSpeed;
 
     private Rotation2d lastAngle;
 
-    private final Supplier<Angle> absoluteAngle;
+    private final StatusSignal<Angle> absoluteAngle;
 
     /**
      * Creates a new Swerve Module object
@@ -60,22 +63,28 @@ public class SwerveModule {
 
         final PIDFFConfig drivePIDConfig = driveConfig.pidffConfig;
         feedforward = new SimpleMotorFeedforward(drivePIDConfig.getkS(), drivePIDConfig.getkV(), drivePIDConfig.getkA());
+        TunableGains.addListener(drivePIDConfig, gains -> feedforward = new SimpleMotorFeedforward(gains[3], gains[4], gains[5]));
         
+        angleMotor = angleConfig.motor;
+        driveMotor = driveConfig.motor;
+        remoteFeedback = encoderConfig.feedback != AzimuthFeedback.INTERNAL && angleMotor instanceof NAR_TalonFX;
+
         /* Angle Encoder Config */
         angleEncoder = encoderConfig.encoder;
-        var absoluteAngleSupplier = angleEncoder.getAbsolutePosition();
+        absoluteAngle = angleEncoder.getAbsolutePosition();
         if (shouldOptimizeCAN) {
-            absoluteAngleSupplier.setUpdateFrequency(100);
+            absoluteAngle.setUpdateFrequency(100);
+            // the angle motor reads the CANcoder's position frames directly
+            if (remoteFeedback) angleEncoder.getPosition().setUpdateFrequency(100);
             angleEncoder.optimizeBusUtilization();
         }
-        absoluteAngle = absoluteAngleSupplier.asSupplier();
         
         
         final SensorDirectionValue direction = encoderConfig.invert ? SensorDirectionValue.Clockwise_Positive : SensorDirectionValue.CounterClockwise_Positive;
-        angleEncoder.getConfigurator().apply(new MagnetSensorConfigs().withSensorDirection(direction));
-
-        angleMotor = angleConfig.motor;
-        driveMotor = driveConfig.motor;
+        final MagnetSensorConfigs magnetConfigs = new MagnetSensorConfigs().withSensorDirection(direction);
+        // with remote feedback the CANcoder itself reports 0 when the module faces forward
+        if (remoteFeedback) magnetConfigs.withMagnetOffset(-encoderConfig.encoderOffset / 360.0);
+        angleEncoder.getConfigurator().apply(magnetConfigs);
 
         /* Angle Motor Config */
         configAngleMotor();
@@ -91,6 +100,12 @@ public class SwerveModule {
      */
     private void configAngleMotor(){
         angleMotor.configMotor(angleConfig.motorConfig);
+        if (remoteFeedback) {
+            final double rotorToSensorRatio = Double.isNaN(encoderConfig.rotorToSensorRatio)
+                ? 360.0 / angleConfig.motorConfig.distanceFactor : encoderConfig.rotorToSensorRatio;
+            ((NAR_TalonFX) angleMotor).configRemoteCANcoder(angleEncoder.getDeviceID(), encoderConfig.feedback == AzimuthFeedback.FUSED,
+                rotorToSensorRatio, encoderConfig.sensorToMechanismRatio, 360);
+        }
         angleMotor.configPID(angleConfig.pidffConfig);
         angleMotor.enableContinuousInput(-180, 180);
         resetToAbsolute();
@@ -101,6 +116,9 @@ public class SwerveModule {
      */
     private void configDriveMotor(){        
         driveMotor.configMotor(driveConfig.motorConfig);
+        if (useOnboardFeedforward && driveMotor instanceof NAR_TalonFX) {
+            ((NAR_TalonFX) driveMotor).enableOnboardFeedforward(true);
+        }
         driveMotor.configPID(driveConfig.pidffConfig);
         driveMotor.resetPosition(0);
     }
@@ -131,7 +149,8 @@ public class SwerveModule {
      * @param desiredState The desired state with a velocity and angular component
      */
     private void setSpeed(SwerveModuleState desiredState) {
-        driveMotor.set(desiredState.speedMetersPerSecond, Control.Velocity, feedforward.calculate(desiredState.speedMetersPerSecond));
+        final double ff = driveMotor.hasOnboardFeedforward() ? 0 : feedforward.calculate(desiredState.speedMetersPerSecond);
+        driveMotor.set(desiredState.speedMetersPerSecond, Control.Velocity, ff);
     }
 
     /**
@@ -151,9 +170,10 @@ public class SwerveModule {
     }
 
     /**
-     * Resets the angle motor to the CANCoder position
+     * Resets the angle motor to the CANCoder position, does nothing when the angle motor reads the CANcoder directly
      */
     public void resetToAbsolute(){
+        if (remoteFeedback) return;
         angleMotor.resetPosition(getAbsoluteAngle().getDegrees());
     }
 
@@ -161,14 +181,16 @@ public class SwerveModule {
      * Returns the current angle of the CANCoder
      */
     public Rotation2d getAbsoluteAngle(){
-        return Rotation2d.fromDegrees(MathUtil.inputModulus(absoluteAngle.get().in(Units.Degrees) - encoderConfig.encoderOffset, -180, 180));
+        final double offset = remoteFeedback ? 0 : encoderConfig.encoderOffset;
+        return Rotation2d.fromDegrees(MathUtil.inputModulus(absoluteAngle.refresh().getValueAsDouble() * 360.0 - offset, -180, 180));
     }
 
     /**
      * Returns the current angle of the CANCoder
      */
     public Rotation2d getRawAbsoluteAngle(){
-        return Rotation2d.fromDegrees(MathUtil.inputModulus(absoluteAngle.get().in(Units.Degrees), -180, 180));
+        final double offset = remoteFeedback ? encoderConfig.encoderOffset : 0;
+        return Rotation2d.fromDegrees(MathUtil.inputModulus(absoluteAngle.refresh().getValueAsDouble() * 360.0 + offset, -180, 180));
     }
 
     /**
@@ -192,7 +214,7 @@ public class SwerveModule {
      * @return Angle in degrees
      */
     private Rotation2d getAngle() {
-        return Rotation2d.fromDegrees(angleMotor.getPosition());
+        return Rotation2d.fromDegrees(useLatencyCompensation ? angleMotor.getLatencyCompensatedPosition() : angleMotor.getPosition());
     }
 
     /**
@@ -208,7 +230,15 @@ public class SwerveModule {
      * @return Distance in meters
      */
     private double getPosition() {
-        return driveMotor.getPosition();
+        return useLatencyCompensation ? driveMotor.getLatencyCompensatedPosition() : driveMotor.getPosition();
+    }
+
+    /**
+     * Returns the age of the oldest reading used by the module's state and position
+     * @return Age in seconds
+     */
+    public double getDataAge() {
+        return Math.max(driveMotor.getDataAge(), angleMotor.getDataAge());
     }
 
     /**
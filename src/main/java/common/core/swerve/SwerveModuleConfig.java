@@ -23,15 +23,50 @@ public class SwerveModuleConfig {
         }
     }
 
+    /**
+     * Sensor the angle motor closes its loop on.
+     */
+    public enum AzimuthFeedback {
+        /** Rotor encoder, seeded from the CANcoder by resetToAbsolute */
+        INTERNAL,
+        /** CANcoder as a remote sensor */
+        REMOTE,
+        /** CANcoder fused with the rotor encoder, requires Phoenix Pro */
+        FUSED
+    }
+
     public static class SwerveEncoderConfig {
         public final CANcoder encoder;
         public final double encoderOffset;
         public final boolean invert;
+        public final AzimuthFeedback feedback;
+        public final double rotorToSensorRatio;
+        public final double sensorToMechanismRatio;
 
-        public SwerveEncoderConfig(CANcoder encoder, double encoderOffset, boolean invert) {
+        /**
+         * Creates a new encoder config
+         * @param encoder The CANcoder
+         * @param encoderOffset Angle of the CANcoder when the module faces forward, in degrees
+         * @param invert Whether clockwise is positive
+         * @param feedback Sensor the angle motor closes its loop on
+         * @param rotorToSensorRatio Rotor rotations per CANcoder rotation, NaN to use 360 / the angle motor's distanceFactor
+         * @param sensorToMechanismRatio CANcoder rotations per module rotation
+         */
+        public SwerveEncoderConfig(CANcoder encoder, double encoderOffset, boolean invert, AzimuthFeedback feedback, double rotorToSensorRatio, double sensorToMechanismRatio) {
             this.encoder = encoder;
             this.encoderOffset = encoderOffset;
             this.invert = invert;
+            this.feedback = feedback;
+            this.rotorToSensorRatio = rotorToSensorRatio;
+            this.sensorToMechanismRatio = sensorToMechanismRatio;
+        }
+
+        public SwerveEncoderConfig(CANcoder encoder, double encoderOffset, boolean invert, AzimuthFeedback feedback) {
+            this(encoder, encoderOffset, invert, feedback, Double.NaN, 1);
+        }
+
+        public SwerveEncoderConfig(CANcoder encoder, double encoderOffset, boolean invert) {
+            this(encoder, encoderOffset, invert, AzimuthFeedback.INTERNAL);
         }
     }
 
@@ -0,0 +1,177 @@
+package common.hardware.motorcontroller;
+
+import static common.hardware.motorcontroller.MotorControllerConstants.MEDIUM_PRIORITY;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import common.core.misc.BackgroundExecutor;
+import common.core.misc.NAR_Robot;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Team 3128's robot wide supply current budget.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Every registered motor always keeps its minimum supply limit.
+ * <li> The rest of the budget goes to motors by priority, highest first, based on what they are drawing
+ *      plus headroom. Anything left over raises limits back toward their maximum.
+ * <li> The budget shrinks as battery voltage sags toward brownout.
+ * <li> Limits are only rewritten when they move by more than the hysteresis, at most once per write
+ *      interval per motor. The config writes run on the background thread, one at a time per motor, and
+ *      NAR_TalonFX locks its current limit config so they cannot race the other limit setters.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class CurrentBudgetManager {
+
+    /** Total supply current the motors may share, in amps. */
+    public static double totalBudget = 250;
+    /** Battery voltage below which the budget starts shrinking. */
+    public static double sagVoltage = 9.5;
+    /** Battery voltage at which the budget reaches its minimum scale. */
+    public static double brownoutVoltage = 7.5;
+    /** Fraction of the budget left at the brownout voltage. */
+    public static double minBudgetScale = 0.5;
+    /** Smallest change in a motor's limit worth a config write, in amps. */
+    public static int hysteresis = 5;
+    /** Minimum time between config writes to the same motor, in seconds. */
+    public static double writeInterval = 0.25;
+
+    private static final double HEADROOM_FACTOR = 1.5;
+    private static final double HEADROOM_AMPS = 10;
+    private static final double PERIOD = MEDIUM_PRIORITY / 1000.0;
+
+    private static class Budget {
+        private final NAR_Motor motor;
+        private final int priority;
+        private final int minLimit;
+        private final int maxLimit;
+        private final DoublePublisher limitPublisher;
+        private double request;
+        private double allocation;
+        private int appliedLimit;
+        private double lastWrite = Double.NEGATIVE_INFINITY;
+        private final AtomicBoolean writing = new AtomicBoolean(false);
+
+        private Budget(NAR_Motor motor, int priority, int minLimit, int maxLimit, NetworkTable table) {
+            this.motor = motor;
+            this.priority = priority;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.appliedLimit = maxLimit;
+            limitPublisher = table.getDoubleTopic("Limit " + motor.getId()).publish();
+        }
+    }
+
+    private static final ArrayList<Budget> budgets = new ArrayList<Budget>();
+    private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("CurrentBudget");
+    private static final DoublePublisher totalPublisher = table.getDoubleTopic("TotalCurrent").publish();
+    private static final DoublePublisher budgetPublisher = table.getDoubleTopic("Budget").publish();
+    private static final DoublePublisher voltagePublisher = table.getDoubleTopic("BatteryVoltage").publish();
+    private static boolean started = false;
+
+    private CurrentBudgetManager() {}
+
+    /**
+     * Adds a motor to the budget and sets its supply limit to the maximum.
+     * @param motor The motor.
+     * @param priority Higher priorities are served first, ie. the drivetrain.
+     * @param minLimit Supply limit the motor always keeps, in amps.
+     * @param maxLimit Supply limit the motor never exceeds, in amps.
+     */
+    public static void register(NAR_Motor motor, int priority, int minLimit, int maxLimit) {
+        final Budget budget = new Budget(motor, priority, minLimit, maxLimit, table);
+        int index = 0;
+        while (index < budgets.size() && budgets.get(index).priority >= priority) index++;
+        budgets.add(index, budget);
+        motor.setSupplyLimit(maxLimit);
+        motor.enableSupplyCurrentStatusFrame();
+
+        if (started) return;
+        started = true;
+        NAR_Robot.addPeriodic("CurrentBudget", CurrentBudgetManager::update, PERIOD);
+    }
+
+    /**
+     * Redistributes the budget and writes limits that moved past the hysteresis.
+     */
+    private static void update() {
+        final double voltage = RobotController.getBatteryVoltage();
+        final double scale = minBudgetScale + (1 - minBudgetScale)
+            * Math.min(1, Math.max(0, (voltage - brownoutVoltage) / (sagVoltage - brownoutVoltage)));
+        final double budget = totalBudget * scale;
+
+        double total = 0;
+        double remaining = budget;
+        for (int i = 0; i < budgets.size(); i++) {
+            final Budget motor = budgets.get(i);
+            final double current = Math.abs(motor.motor.getSupplyCurrent());
+            total += current;
+            motor.request = Math.min(motor.maxLimit, Math.max(motor.minLimit, current * HEADROOM_FACTOR + HEADROOM_AMPS));
+            motor.allocation = motor.minLimit;
+            remaining -= motor.minLimit;
+        }
+
+        // serve requests one priority tier at a time, sharing proportionally within a tier
+        remaining = distribute(remaining, true);
+        // hand out whatever is left toward the maximum limits
+        distribute(remaining, false);
+
+        final double now = Timer.getFPGATimestamp();
+        for (int i = 0; i < budgets.size(); i++) {
+            final Budget motor = budgets.get(i);
+            final int limit = (int) Math.round(motor.allocation);
+            motor.limitPublisher.set(limit);
+            if (Math.abs(limit - motor.appliedLimit) < hysteresis || now - motor.lastWrite < writeInterval) continue;
+            // retried next update if the previous write is still running
+            if (motor.writing.getAndSet(true)) continue;
+            motor.appliedLimit = limit;
+            motor.lastWrite = now;
+            BackgroundExecutor.run(() -> {
+                try {
+                    motor.motor.setSupplyLimit(limit);
+                } finally {
+                    motor.writing.set(false);
+                }
+            });
+        }
+
+        totalPublisher.set(total);
+        budgetPublisher.set(budget);
+        voltagePublisher.set(voltage);
+    }
+
+    /**
+     * Raises allocations tier by tier until the remaining budget runs out.
+     * @param remaining Budget left to hand out, in amps.
+     * @param toRequest True to raise toward each request, false toward each maximum.
+     * @return Budget left afterwards.
+     */
+    private static double distribute(double remaining, boolean toRequest) {
+        int start = 0;
+        while (start < budgets.size() && remaining > 0) {
+            int end = start;
+            double demand = 0;
+            while (end < budgets.size() && budgets.get(end).priority == budgets.get(start).priority) {
+                final Budget motor = budgets.get(end);
+                demand += Math.max(0, (toRequest ? motor.request : motor.maxLimit) - motor.allocation);
+                end++;
+            }
+            final double share = demand <= remaining ? 1 : remaining / demand;
+            for (int i = start; i < end; i++) {
+                final Budget motor = budgets.get(i);
+                motor.allocation += Math.max(0, (toRequest ? motor.request : motor.maxLimit) - motor.allocation) * share;
+            }
+            remaining -= demand * share;
+            start = end;
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,171 @@
+package common.hardware.motorcontroller;
+
+import static common.hardware.motorcontroller.MotorControllerConstants.LOW_PRIORITY;
+import static common.hardware.motorcontroller.MotorControllerConstants.MEDIUM_PRIORITY;
+
+import java.util.ArrayList;
+
+import common.core.misc.NAR_Robot;
+import common.core.misc.NAR_Robot.Priority;
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Team 3128's low cost health monitor for {@link NAR_Motor}s.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Temperature, supply voltage and faults are read at the low priority rate, stall current and
+ *      velocity at the medium priority rate. Monitoring a motor raises those signals to these rates,
+ *      unmonitored motors keep their status frame presets.
+ * <li> A first order thermal model predicts the temperature a horizon ahead from the recent current,
+ *      and suggests the stator limit that keeps the prediction under the maximum temperature.
+ * <li> A stall is flagged when current stays high while the rotor barely moves, rotor velocity is used
+ *      so motors reporting geared mechanism units are compared against the same threshold.
+ * <li> Results are published under MotorHealth/id, nothing is applied to the motors.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class MotorHealthMonitor {
+
+    /** Steady state temperature rise per amp squared of stator current, celsius / A^2. */
+    public static double thermalGain = 0.04;
+    /** Thermal time constant of the motor in seconds. */
+    public static double thermalTimeConstant = 150;
+    /** Ambient temperature in celsius. */
+    public static double ambientTemperature = 25;
+    /** Temperature to stay under in celsius. */
+    public static double maxTemperature = 90;
+    /** How far ahead to predict temperature in seconds. */
+    public static double predictionHorizon = 30;
+
+    /** Stator current above which a motor may be stalled, in amps. */
+    public static double stallCurrent = 30;
+    /** Rotor speed below which a motor may be stalled, in RPM. */
+    public static double stallVelocity = 60;
+    /** Time the stall conditions must hold, in seconds. */
+    public static double stallTime = 0.5;
+
+    private static final double SLOW_PERIOD = LOW_PRIORITY / 1000.0;
+    private static final double MEDIUM_PERIOD = MEDIUM_PRIORITY / 1000.0;
+
+    private static class Health {
+        private final NAR_Motor motor;
+        private double currentSquaredSum = 0;
+        private int currentSamples = 0;
+        private double meanCurrentSquared = 0;
+        private double stalledFor = 0;
+
+        private final DoublePublisher temperature;
+        private final DoublePublisher predictedTemperature;
+        private final DoublePublisher suggestedStatorLimit;
+        private final DoublePublisher supplyVoltage;
+        private final DoublePublisher current;
+        private final BooleanPublisher overheating;
+        private final BooleanPublisher stalled;
+        private final BooleanPublisher fault;
+
+        private Health(NAR_Motor motor) {
+            this.motor = motor;
+            final NetworkTable table = NetworkTableInstance.getDefault().getTable("MotorHealth").getSubTable(Integer.toString(motor.getId()));
+            temperature = table.getDoubleTopic("Temperature").publish();
+            predictedTemperature = table.getDoubleTopic("PredictedTemperature").publish();
+            suggestedStatorLimit = table.getDoubleTopic("SuggestedStatorLimit").publish();
+            supplyVoltage = table.getDoubleTopic("SupplyVoltage").publish();
+            current = table.getDoubleTopic("StallCurrent").publish();
+            overheating = table.getBooleanTopic("Overheating").publish();
+            stalled = table.getBooleanTopic("Stalled").publish();
+            fault = table.getBooleanTopic("Fault").publish();
+        }
+
+        /**
+         * Reads current and velocity, accumulates heating and checks for a stall.
+         */
+        private void updateCurrent() {
+            final double amps = motor.getStallCurrent();
+            currentSquaredSum += amps * amps;
+            currentSamples++;
+            current.set(amps);
+
+            final boolean stalling = Math.abs(amps) > stallCurrent && Math.abs(motor.getRotorVelocity()) < stallVelocity;
+            stalledFor = stalling ? stalledFor + MEDIUM_PERIOD : 0;
+            stalled.set(stalledFor >= stallTime);
+        }
+
+        /**
+         * Reads the slow signals and runs the thermal model.
+         */
+        private void updateThermal() {
+            if (currentSamples > 0) {
+                meanCurrentSquared = currentSquaredSum / currentSamples;
+                currentSquaredSum = 0;
+                currentSamples = 0;
+            }
+
+            final double celsius = motor.getTemperature();
+            final double decay = Math.exp(-predictionHorizon / thermalTimeConstant);
+            final double steadyState = ambientTemperature + thermalGain * meanCurrentSquared;
+            final double predicted = steadyState + (celsius - steadyState) * decay;
+
+            // current that lands the prediction exactly on the max temperature
+            final double headroom = maxTemperature - ambientTemperature - (celsius - ambientTemperature) * decay;
+            final double limit = Math.sqrt(Math.max(0, headroom) / (thermalGain * (1 - decay)));
+
+            temperature.set(celsius);
+            predictedTemperature.set(predicted);
+            suggestedStatorLimit.set(limit);
+            overheating.set(predicted > maxTemperature);
+            supplyVoltage.set(motor.getSupplyVoltage());
+            fault.set(motor.hasFault());
+        }
+    }
+
+    private static final ArrayList<Health> monitored = new ArrayList<Health>();
+    private static boolean started = false;
+
+    private MotorHealthMonitor() {}
+
+    /**
+     * Starts monitoring every motor created so far.
+     */
+    public static void monitorAll() {
+        for (final NAR_Motor motor : NAR_Motor.getMotors()) {
+            monitor(motor);
+        }
+    }
+
+    /**
+     * Starts monitoring motors.
+     * @param motors Motors to monitor.
+     */
+    public static void monitor(NAR_Motor... motors) {
+        for (final NAR_Motor motor : motors) {
+            boolean present = false;
+            for (final Health health : monitored) {
+                present |= health.motor == motor;
+            }
+            if (present) continue;
+            monitored.add(new Health(motor));
+            motor.enableHealthStatusFrames();
+        }
+        if (started) return;
+        started = true;
+        NAR_Robot.addPeriodic("MotorHealthCurrent", MotorHealthMonitor::updateCurrent, MEDIUM_PERIOD, Priority.LOW);
+        NAR_Robot.addPeriodic("MotorHealthThermal", MotorHealthMonitor::updateThermal, SLOW_PERIOD, Priority.LOW);
+    }
+
+    private static void updateCurrent() {
+        for (int i = 0; i < monitored.size(); i++) {
+            monitored.get(i).updateCurrent();
+        }
+    }
+
+    private static void updateThermal() {
+        for (int i = 0; i < monitored.size(); i++) {
+            monitored.get(i).updateThermal();
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package common.hardware.motorcontroller;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 
 import common.core.controllers.PIDFFConfig;
+import common.core.misc.FlightEvents.MotorWrite;
 import common.core.misc.NAR_Robot;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.wpilibj.motorcontrol.MotorController;
+import jdk.jfr.EventType;
 
 /**
  * Team 3128's motor class replacement for {@link MotorController}
@@ -114,19 +119,26 @@ public abstract class NAR_Motor implements AutoCloseable {
         COAST
     }
 
+    /** Let motor controllers that support it wrap continuous position control onboard. */
+    public static boolean useHardwareContinuousWrap = true;
+
     private static final HashSet<NAR_Motor> leaders = new HashSet<NAR_Motor>();
 
+    private static final ArrayList<NAR_Motor> motors = new ArrayList<NAR_Motor>();
+
+    private static final EventType MOTOR_WRITE = EventType.getEventType(MotorWrite.class);
+
     
 
     static {
-        NAR_Robot.addPeriodic(()-> {
+        NAR_Robot.addPeriodic("FollowerSync", ()-> {
             for (final NAR_Motor leader : leaders) {
                 final double output = leader.getAppliedOutput();
                 for (final NAR_Motor follower : leader.followers) {
                     follower.set(output);
                 }
             }
-        }, 0.1);
+        }, 0.1, NAR_Robot.Priority.LOW);
     }
 
     private final LinkedList<NAR_Motor> followers = new LinkedList<NAR_Motor>();
@@ -137,12 +149,29 @@ public abstract class NAR_Motor implements AutoCloseable {
     private double minInput;
     private double maxInput;
     private boolean isContinuous = false;
+    private boolean hardwareContinuous = false;
     protected double unitConversionFactor = 1;
     protected double timeConversionFactor = 1;
 
     public NAR_Motor(int id){
         this.id = id;
-        
+        motors.add(this);
+    }
+
+    /**
+     * Returns every motor created so far.
+     * @return Unmodifiable list of motors
+     */
+    public static List<NAR_Motor> getMotors() {
+        return Collections.unmodifiableList(motors);
+    }
+
+    /**
+     * Returns the motor's CAN id
+     * @return The device id
+     */
+    public int getId() {
+        return id;
     }
 
     /**
@@ -177,10 +206,58 @@ public abstract class NAR_Motor implements AutoCloseable {
      * @param feedForward Feedforward of motor measured in volts
      */
     public void set(double value, Control mode, double feedForward) {
-        if (value == prevValue && mode == prevMode && feedForward == prevFeedForward) return;
+        // Only create the event while recording, so writes allocate nothing otherwise
+        final MotorWrite event = MOTOR_WRITE.isEnabled() ? new MotorWrite() : null;
+        if (value == prevValue && mode == prevMode && feedForward == prevFeedForward) {
+            if (event != null) commitWrite(event, value, mode, feedForward, false);
+            return;
+        }
+        if (event != null) event.begin();
         prevValue = value;
         prevMode = mode;
         prevFeedForward = feedForward;
+        write(value, mode, feedForward);
+        if (event != null) commitWrite(event, value, mode, feedForward, true);
+    }
+
+    /**
+     * Runs set and the getters on changing setpoints with nothing sent to hardware, so the JIT compiles this
+     * motor's real classes before enabling. Does nothing unless the motor controller can skip its writes.
+     * @param time Time driving the setpoints in seconds
+     */
+    public void warmUp(double time) {}
+
+    /**
+     * Exercises set and the getters, called by subclasses from warmUp while their hardware writes are skipped.
+     * The last setpoint is restored so the next real write is not mistaken for a repeat.
+     * @param time Time driving the setpoints in seconds
+     */
+    protected final void exerciseWrites(double time) {
+        final double value = prevValue;
+        final Control mode = prevMode;
+        final double feedForward = prevFeedForward;
+        set(0.1 * Math.sin(time), Control.PercentOutput);
+        set(getPosition() + Math.sin(time), Control.Position);
+        set(Math.cos(time), Control.Velocity, 0.1);
+        getVelocity();
+        getAppliedOutput();
+        getStallCurrent();
+        prevValue = value;
+        prevMode = mode;
+        prevFeedForward = feedForward;
+    }
+
+    private void commitWrite(MotorWrite event, double value, Control mode, double feedForward, boolean sent) {
+        if (!event.shouldCommit()) return;
+        event.deviceId = id;
+        event.value = value;
+        event.mode = mode.name();
+        event.feedForward = feedForward;
+        event.sent = sent;
+        event.commit();
+    }
+
+    private void write(double value, Control mode, double feedForward) {
         switch(mode) {
             case PercentOutput:
                 setPercentOutput(MathUtil.clamp(value, -1, 1));
@@ -189,8 +266,12 @@ public abstract class NAR_Motor implements AutoCloseable {
                 setVelocity(value / unitConversionFactor * timeConversionFactor, feedForward);
                 break;
             case Position:
+                if (hardwareContinuous) {
+                    setPosition(convertInput(value) / unitConversionFactor, feedForward);
+                    break;
+                }
                 if (isContinuous) {
-                    final double position = getRawPosition() * unitConversionFactor;
+                    final double position = getCachedRawPosition() * unitConversionFactor;
                     final double errorBound = (maxInput - minInput) / 2.0;
                     final double error = convertInput(value) - convertInput(position);
                     final double delta = MathUtil.inputModulus(error, -errorBound, errorBound);
@@ -236,6 +317,15 @@ public abstract class NAR_Motor implements AutoCloseable {
 	 */
 	public abstract void configPID(PIDFFConfig config);
 
+    /**
+     * Returns whether the motor controller computes the PIDFFConfig feedforward itself.
+     * <p>When true, callers should not add their own feedforward to {@link #set(double, Control, double)}.
+     * @return True if kS, kV, kA and kG are applied onboard.
+     */
+    public boolean hasOnboardFeedforward() {
+        return false;
+    }
+
     /**
      * Wraps a measurement value to the min and max input
      * @param value A measurement value
@@ -257,6 +347,18 @@ public abstract class NAR_Motor implements AutoCloseable {
         this.minInput = Math.min(minInput, maxInput);
         this.maxInput = Math.max(minInput, maxInput);
         isContinuous = true;
+        hardwareContinuous = useHardwareContinuousWrap && enableContinuousWrap(this.maxInput - this.minInput);
+    }
+
+    /**
+     * Wraps position control on the motor controller, so one mechanism rotation covers the input range.
+     * <p>Implementations that support it change the unit conversion factor to the range, so setpoints
+     * and measurements are sent in mechanism rotations.
+     * @param range Width of the continuous input range, in the motor's units.
+     * @return True if the motor controller now wraps position control itself.
+     */
+    protected boolean enableContinuousWrap(double range) {
+        return false;
     }
 
     /**
@@ -265,6 +367,7 @@ public abstract class NAR_Motor implements AutoCloseable {
      */
     public void setUnitConversionFactor(double conversionFactor) {
         this.unitConversionFactor = conversionFactor;
+        if (hardwareContinuous) hardwareContinuous = enableContinuousWrap(maxInput - minInput);
     }
 
     /**
@@ -350,24 +453,90 @@ public abstract class NAR_Motor implements AutoCloseable {
         return getRawVelocity() * unitConversionFactor / timeConversionFactor;
     }
 
+    /**
+     * Returns the motor position extrapolated to the current time using the velocity and the age of the reading.
+     * <p>Motors without timestamped readings return the same value as {@link #getPosition()}.
+     * @return Double measuring motor position
+     */
+    public double getLatencyCompensatedPosition() {
+        final double position = getRawLatencyCompensatedPosition() * unitConversionFactor;
+        return convertInput(position);
+    }
+
+    /**
+     * Returns the age of the latest position reading.
+     * @return Age in seconds, 0 if the motor does not timestamp its readings.
+     */
+    public double getDataAge() {
+        return 0;
+    }
+
     /**
      * Returns the motor position in rotations
      * @return Double measuring motor position
      */
     protected abstract double getRawPosition();
 
+    /**
+     * Returns the motor position in rotations without requesting a new reading, ie. the value read this loop
+     * @return Double measuring motor position
+     */
+    protected double getCachedRawPosition() {
+        return getRawPosition();
+    }
+
+    /**
+     * Returns the motor position in rotations extrapolated to the current time
+     * @return Double measuring motor position
+     */
+    protected double getRawLatencyCompensatedPosition() {
+        return getRawPosition();
+    }
+
     /**
      * Returns the current motor velocity in RPM
      * @return Double measuring motor velocity
      */
     protected abstract double getRawVelocity();
 
+    /**
+     * Returns the rotor velocity in RPM, before any gearing the controller reports through
+     * @return Double measuring rotor velocity
+     */
+    public double getRotorVelocity() {
+        return getRawVelocity();
+    }
+
     /**
      * Returns the Motor's temperature in celsius.
      * @return The temperature in celsius.
      */
     public abstract double getTemperature();
 
+    /**
+     * Returns the current drawn from the supply by the motor controller.
+     * @return The supply current in amps, NaN if the controller does not report it.
+     */
+    public double getSupplyCurrent() {
+        return Double.NaN;
+    }
+
+    /**
+     * Returns the voltage supplied to the motor controller.
+     * @return The supply voltage in volts, NaN if the controller does not report it.
+     */
+    public double getSupplyVoltage() {
+        return Double.NaN;
+    }
+
+    /**
+     * Returns whether the motor controller reports any active fault.
+     * @return True if a fault is active, false if the controller does not report faults.
+     */
+    public boolean hasFault() {
+        return false;
+    }
+
     /**
      * Sets a motor's output based on the leader's
      * @param leader The motor to follow
@@ -455,6 +624,16 @@ public abstract class NAR_Motor implements AutoCloseable {
      */
     public abstract void setFollowerStatusFrames();
 
+    /**
+     * Raises the signals MotorHealthMonitor reads to its rates, called when the motor is first monitored
+     */
+    protected void enableHealthStatusFrames() {}
+
+    /**
+     * Raises the supply current signal to the CurrentBudgetManager rate, called when the motor is registered
+     */
+    protected void enableSupplyCurrentStatusFrame() {}
+
     /**
      * Returns the motor object controlling the motion
      * @return The motor ie. SparkMax, TalonFX
@@ -1,28 +1,38 @@
 package common.hardware.motorcontroller;
 
 import static common.hardware.motorcontroller.MotorControllerConstants.HIGH_PRIORITY_FREQ;
+import static common.hardware.motorcontroller.MotorControllerConstants.LOW_PRIORITY_FREQ;
+import static common.hardware.motorcontroller.MotorControllerConstants.MEDIUM_PRIORITY_FREQ;
 import static common.hardware.motorcontroller.MotorControllerConstants.NEO_STATOR_CurrentLimit;
 import static common.hardware.motorcontroller.MotorControllerConstants.NEO_SUPPLY_CurrentLimit;
 
+import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.configs.ClosedLoopGeneralConfigs;
 import com.ctre.phoenix6.configs.CurrentLimitsConfigs;
+import com.ctre.phoenix6.configs.FeedbackConfigs;
 import com.ctre.phoenix6.configs.MotorOutputConfigs;
 import com.ctre.phoenix6.configs.Slot0Configs;
 import com.ctre.phoenix6.configs.VoltageConfigs;
 import com.ctre.phoenix6.controls.PositionVoltage;
 import com.ctre.phoenix6.controls.VelocityVoltage;
 import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
+import com.ctre.phoenix6.signals.GravityTypeValue;
 import com.ctre.phoenix6.signals.InvertedValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 
 import common.core.controllers.PIDFFConfig;
+import common.core.controllers.PIDFFConfig.GravityType;
+import common.core.misc.FlightEvents.ConfigAttempt;
+import common.core.misc.FlightEvents.ConfigFailure;
 import edu.wpi.first.math.system.plant.DCMotor;
-import edu.wpi.first.units.Units;
 import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.units.measure.AngularVelocity;
 import edu.wpi.first.units.measure.Current;
 import edu.wpi.first.units.measure.Temperature;
+import edu.wpi.first.units.measure.Voltage;
 
 import java.util.function.Supplier;
 
@@ -32,6 +42,11 @@ public class NAR_TalonFX extends NAR_Motor {
 
 	public static int maximumRetries = 5;
 
+    private static final double KRAKEN_TORQUE_CONSTANT = DCMotor.getKrakenX60(1).KtNMPerAmp;
+
+    /** Oldest reading extrapolated by latency compensation, in seconds. */
+    public static double maxCompensatedLatency = 0.3;
+
     /**
 	 * @return The number of failed configurations of the motor.
 	 */
@@ -44,12 +59,29 @@ public class NAR_TalonFX extends NAR_Motor {
     private final CurrentLimitsConfigs currentLimitsConfigs = new CurrentLimitsConfigs();
     private final VoltageConfigs voltageConfigs = new VoltageConfigs();
     private final MotorOutputConfigs motorOutputConfigs = new MotorOutputConfigs();
+    private final FeedbackConfigs feedbackConfigs = new FeedbackConfigs();
+    private final ClosedLoopGeneralConfigs closedLoopGeneralConfigs = new ClosedLoopGeneralConfigs();
+    private final VelocityVoltage velocityRequest = new VelocityVoltage(0);
+    private final PositionVoltage positionRequest = new PositionVoltage(0);
 
     private final StatusSignal<Double> appliedOutput;
     private final StatusSignal<Current> stallCurrent;
     private final StatusSignal<Angle> position;
     private final StatusSignal<AngularVelocity> velocity;
     private final StatusSignal<Temperature> temperature;
+    private final StatusSignal<Voltage> motorVoltage;
+    private final StatusSignal<Double> closedLoopReference;
+    private final StatusSignal<Double> closedLoopError;
+    private final StatusSignal<Voltage> supplyVoltage;
+    private final StatusSignal<Current> supplyCurrent;
+    private final StatusSignal<Integer> faults;
+
+    private volatile PIDFFConfig pidConfig;
+    private boolean onboardFeedforward = false;
+    private double feedbackRatio = 1;
+    private double baseFeedbackRatio = 1;
+    private double baseSensorToMechanismRatio = 1;
+    private boolean skipWrites = false;
 
     public NAR_TalonFX(int deviceNumber, String canbus, PIDFFConfig pidConfig) {
         super(deviceNumber);
@@ -60,6 +92,12 @@ public class NAR_TalonFX extends NAR_Motor {
         position = motor.getPosition();
         velocity = motor.getVelocity();
         temperature = motor.getDeviceTemp();
+        motorVoltage = motor.getMotorVoltage();
+        closedLoopReference = motor.getClosedLoopReference();
+        closedLoopError = motor.getClosedLoopError();
+        supplyVoltage = motor.getSupplyVoltage();
+        supplyCurrent = motor.getSupplyCurrent();
+        faults = motor.getFaultField();
 
         enableVoltageCompensation(12);
         setCurrentLimit(NEO_STATOR_CurrentLimit, NEO_SUPPLY_CurrentLimit);
@@ -81,29 +119,127 @@ public class NAR_TalonFX extends NAR_Motor {
 	 */
 	private void configTalonFX(Supplier<StatusCode> config)
 	{
+		StatusCode status = StatusCode.OK;
 		for (int i = 0; i < maximumRetries; i++)
 		{
-			if (config.get() == StatusCode.OK)
+			final ConfigAttempt event = new ConfigAttempt();
+			event.begin();
+			status = config.get();
+			if (event.shouldCommit())
+			{
+				event.deviceId = getId();
+				event.attempt = i + 1;
+				event.status = status.name();
+				event.ok = status == StatusCode.OK;
+				event.commit();
+			}
+			if (status == StatusCode.OK)
 			{
 				return;
 			}
 		}
 		numFailedConfigs ++;
+		final ConfigFailure failure = new ConfigFailure();
+		if (failure.shouldCommit())
+		{
+			failure.deviceId = getId();
+			failure.attempts = maximumRetries;
+			failure.status = status.name();
+			failure.commit();
+		}
 	}
 
+    /**
+     * {@inheritDoc}
+     * <p>With onboard feedforward enabled kS, kV, kA and kG are also written to the slot. kV and kA are
+     * converted with the current conversion factors, so call after {@link #configMotor(MotorConfig)}.
+     * <p>When the feedback is not one rotor rotation, ie. with a continuous wrap or remote CANcoder, kP, kI and kD
+     * are scaled by the rotor rotations per feedback rotation, so they stay per rotor rotation.
+     */
     @Override
     public void configPID(PIDFFConfig config) {
+        pidConfig = config;
         var PID0 = new Slot0Configs();
-        PID0.kP = config.kP;
-        PID0.kI = config.kI;
-        PID0.kD = config.kD;
-        // PID0.kS = config.kS;
-        // PID0.kV = config.kV;
-        // PID0.kA = config.kA;
-        // PID0.kG = config.kG;
+        PID0.kP = config.kP * feedbackRatio;
+        PID0.kI = config.kI * feedbackRatio;
+        PID0.kD = config.kD * feedbackRatio;
+        if (onboardFeedforward) {
+            // Setpoints are sent as value / unitConversionFactor * timeConversionFactor
+            final double velocityFactor = unitConversionFactor / timeConversionFactor;
+            PID0.kS = config.getkS();
+            PID0.kV = config.getkV() * velocityFactor;
+            PID0.kA = config.getkA() * velocityFactor;
+            PID0.kG = config.getkG();
+            PID0.GravityType = config.getGravityType() == GravityType.ARM ? GravityTypeValue.Arm_Cosine : GravityTypeValue.Elevator_Static;
+        }
         configTalonFX(()-> motor.getConfigurator().apply(PID0));
     }
 
+    /**
+     * Runs the PIDFFConfig feedforward on the motor controller's 1 kHz loop instead of the roboRIO.
+     * <p>The gains are read from the suppliers when applied. ARM gravity needs the position reported in
+     * mechanism rotations with 0 as horizontal.
+     * @param enabled True to push kS, kV, kA and kG to the slot config.
+     */
+    public void enableOnboardFeedforward(boolean enabled) {
+        onboardFeedforward = enabled;
+        if (pidConfig != null) configPID(pidConfig);
+    }
+
+    @Override
+    public boolean hasOnboardFeedforward() {
+        return onboardFeedforward;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Sets SensorToMechanismRatio so the TalonFX reports mechanism rotations and enables ContinuousWrap,
+     * which wraps the error to the shortest path on the 1 kHz loop. Call after the conversion factors are set.
+     */
+    @Override
+    protected boolean enableContinuousWrap(double range) {
+        final double scale = range / unitConversionFactor;
+        feedbackRatio *= scale;
+        feedbackConfigs.SensorToMechanismRatio *= scale;
+        configTalonFX(()-> motor.getConfigurator().apply(feedbackConfigs));
+        closedLoopGeneralConfigs.ContinuousWrap = true;
+        configTalonFX(()-> motor.getConfigurator().apply(closedLoopGeneralConfigs));
+        unitConversionFactor = range;
+        if (pidConfig != null) configPID(pidConfig);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The factor is per feedback sensor rotation, any continuous wrap is recomputed from it.
+     */
+    @Override
+    public void setUnitConversionFactor(double conversionFactor) {
+        feedbackRatio = baseFeedbackRatio;
+        feedbackConfigs.SensorToMechanismRatio = baseSensorToMechanismRatio;
+        super.setUnitConversionFactor(conversionFactor);
+    }
+
+    /**
+     * Closes the loop on a CANcoder instead of the rotor, with position reported in mechanism rotations.
+     * <p>Call after {@link #configMotor(MotorConfig)}, it replaces the unit conversion factor.
+     * @param encoderId CAN id of the CANcoder, on the same bus as the motor.
+     * @param fused True to fuse the CANcoder with the rotor (Phoenix Pro), false to use it as a remote sensor.
+     * @param rotorToSensorRatio Rotor rotations per CANcoder rotation.
+     * @param sensorToMechanismRatio CANcoder rotations per mechanism rotation.
+     * @param unitsPerRotation Motor units per mechanism rotation, ie. 360 for degrees.
+     */
+    public void configRemoteCANcoder(int encoderId, boolean fused, double rotorToSensorRatio, double sensorToMechanismRatio, double unitsPerRotation) {
+        feedbackConfigs.FeedbackRemoteSensorID = encoderId;
+        feedbackConfigs.FeedbackSensorSource = fused ? FeedbackSensorSourceValue.FusedCANcoder : FeedbackSensorSourceValue.RemoteCANcoder;
+        feedbackConfigs.RotorToSensorRatio = rotorToSensorRatio;
+        baseSensorToMechanismRatio = sensorToMechanismRatio;
+        baseFeedbackRatio = rotorToSensorRatio * sensorToMechanismRatio;
+        setUnitConversionFactor(unitsPerRotation);
+        configTalonFX(()-> motor.getConfigurator().apply(feedbackConfigs));
+        if (pidConfig != null) configPID(pidConfig);
+    }
+
     @Override
     public void setInverted(boolean inverted) {
         motorOutputConfigs.Inverted = inverted ? InvertedValue.Clockwise_Positive : InvertedValue.CounterClockwise_Positive;
@@ -112,21 +248,34 @@ public class NAR_TalonFX extends NAR_Motor {
 
     @Override
     protected void setPercentOutput(double speed) {
+        if (skipWrites) return;
         motor.set(speed);
     }
 
     @Override
     protected void setVelocity(double rpm, double feedForward) {
-        var velocitySetpoint = new VelocityVoltage(rpm);
-        velocitySetpoint.FeedForward = feedForward;
-        motor.setControl(velocitySetpoint);
+        velocityRequest.withVelocity(rpm).withFeedForward(feedForward);
+        if (!skipWrites) motor.setControl(velocityRequest);
     }
 
     @Override
     protected void setPosition(double rotations, double feedForward) {
-        var positionSetpoint = new PositionVoltage(rotations);
-        positionSetpoint.FeedForward = feedForward;
-        motor.setControl(positionSetpoint);
+        positionRequest.withPosition(rotations).withFeedForward(feedForward);
+        if (!skipWrites) motor.setControl(positionRequest);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Control requests are built as usual but not sent.
+     */
+    @Override
+    public void warmUp(double time) {
+        skipWrites = true;
+        try {
+            exerciseWrites(time);
+        } finally {
+            skipWrites = false;
+        }
     }
 
     @Override
@@ -136,32 +285,69 @@ public class NAR_TalonFX extends NAR_Motor {
 
     @Override
     public double getAppliedOutput() {
-        return appliedOutput.refresh().getValue();
+        return appliedOutput.refresh().getValueAsDouble();
     }
 
     @Override
     public double getStallCurrent() {
-        return stallCurrent.refresh().getValue().in(Units.Amp);
+        return stallCurrent.refresh().getValueAsDouble();
     }
 
     @Override
 	public double getTorque() {
-		return DCMotor.getKrakenX60(1).withReduction(unitConversionFactor).getTorque(getStallCurrent());
+		return KRAKEN_TORQUE_CONSTANT * unitConversionFactor * getStallCurrent();
 	}
 
     @Override
     protected double getRawPosition() {
-        return position.refresh().getValue().in(Units.Revolution);
+        return position.refresh().getValueAsDouble();
+    }
+
+    @Override
+    protected double getCachedRawPosition() {
+        return position.getValueAsDouble();
+    }
+
+    @Override
+    protected double getRawLatencyCompensatedPosition() {
+        BaseStatusSignal.refreshAll(position, velocity);
+        final double latency = Math.min(position.getTimestamp().getLatency(), maxCompensatedLatency);
+        return position.getValueAsDouble() + velocity.getValueAsDouble() * latency;
+    }
+
+    @Override
+    public double getDataAge() {
+        return position.getTimestamp().getLatency();
     }
 
     @Override
     protected double getRawVelocity() {
-        return velocity.refresh().getValue().in(Units.RotationsPerSecond) * 60.0;
+        return velocity.refresh().getValueAsDouble() * 60.0;
+    }
+
+    @Override
+    public double getRotorVelocity() {
+        return getRawVelocity() * feedbackRatio;
     }
 
     @Override
     public double getTemperature() {
-        return temperature.refresh().getValue().in(Units.Celsius);
+        return temperature.refresh().getValueAsDouble();
+    }
+
+    @Override
+    public double getSupplyCurrent() {
+        return supplyCurrent.refresh().getValueAsDouble();
+    }
+
+    @Override
+    public double getSupplyVoltage() {
+        return supplyVoltage.refresh().getValueAsDouble();
+    }
+
+    @Override
+    public boolean hasFault() {
+        return faults.refresh().getValueAsDouble() != 0;
     }
 
     @Override
@@ -183,35 +369,65 @@ public class NAR_TalonFX extends NAR_Motor {
         configTalonFX(()-> motor.getConfigurator().apply(voltageConfigs));
     }
 
+    // Current limits are locked, CurrentBudgetManager rewrites the supply limit from the background thread
+
     @Override
     public void setStatorLimit(int limit) {
-        currentLimitsConfigs.StatorCurrentLimit = limit;
-        currentLimitsConfigs.StatorCurrentLimitEnable = true;
-        configTalonFX(()-> motor.getConfigurator().apply(currentLimitsConfigs));
+        synchronized (currentLimitsConfigs) {
+            currentLimitsConfigs.StatorCurrentLimit = limit;
+            currentLimitsConfigs.StatorCurrentLimitEnable = true;
+            configTalonFX(()-> motor.getConfigurator().apply(currentLimitsConfigs));
+        }
     }
 
     @Override
     public void setSupplyLimit(int limit) {
-        currentLimitsConfigs.SupplyCurrentLimit = limit;
-        currentLimitsConfigs.SupplyCurrentLimitEnable = true;
-        configTalonFX(()-> motor.getConfigurator().apply(currentLimitsConfigs));
+        synchronized (currentLimitsConfigs) {
+            currentLimitsConfigs.SupplyCurrentLimit = limit;
+            currentLimitsConfigs.SupplyCurrentLimitEnable = true;
+            configTalonFX(()-> motor.getConfigurator().apply(currentLimitsConfigs));
+        }
     }
 
     public void setCurrentLimit(int statorLimit, int supplyLimit) {
-        currentLimitsConfigs.StatorCurrentLimit = statorLimit;
-        currentLimitsConfigs.StatorCurrentLimitEnable = true;
-        currentLimitsConfigs.SupplyCurrentLimit = supplyLimit;
-        currentLimitsConfigs.SupplyCurrentLimitEnable = true;
-        configTalonFX(()-> motor.getConfigurator().apply(currentLimitsConfigs));
+        synchronized (currentLimitsConfigs) {
+            currentLimitsConfigs.StatorCurrentLimit = statorLimit;
+            currentLimitsConfigs.StatorCurrentLimitEnable = true;
+            currentLimitsConfigs.SupplyCurrentLimit = supplyLimit;
+            currentLimitsConfigs.SupplyCurrentLimitEnable = true;
+            configTalonFX(()-> motor.getConfigurator().apply(currentLimitsConfigs));
+        }
+    }
+
+    /**
+     * Raises a signal to at least the given rate, a faster preset rate is kept
+     */
+    private void raiseUpdateFrequency(BaseStatusSignal signal, double frequency) {
+        configTalonFX(()-> signal.setUpdateFrequency(Math.max(signal.getAppliedUpdateFrequency(), frequency)));
+    }
+
+    /**
+     * Health signals, explicitly set so they survive optimizeBusUtilization in any preset
+     */
+    @Override
+    protected void enableHealthStatusFrames() {
+        raiseUpdateFrequency(stallCurrent, MEDIUM_PRIORITY_FREQ);
+        raiseUpdateFrequency(velocity, MEDIUM_PRIORITY_FREQ);
+        raiseUpdateFrequency(temperature, LOW_PRIORITY_FREQ);
+        raiseUpdateFrequency(supplyVoltage, LOW_PRIORITY_FREQ);
+        raiseUpdateFrequency(faults, LOW_PRIORITY_FREQ);
+    }
+
+    @Override
+    protected void enableSupplyCurrentStatusFrame() {
+        raiseUpdateFrequency(supplyCurrent, MEDIUM_PRIORITY_FREQ);
     }
 
     @Override
     public void setDefaultStatusFrames() {
         configTalonFX(()-> appliedOutput.setUpdateFrequency(HIGH_PRIORITY_FREQ));
-        configTalonFX(()-> stallCurrent.setUpdateFrequency(HIGH_PRIORITY_FREQ));
         configTalonFX(()-> velocity.setUpdateFrequency(HIGH_PRIORITY_FREQ));
         configTalonFX(()-> position.setUpdateFrequency(HIGH_PRIORITY_FREQ));
-        configTalonFX(()-> temperature.setUpdateFrequency(HIGH_PRIORITY_FREQ));
         configTalonFX(()->  motor.optimizeBusUtilization());
     }
     
@@ -237,6 +453,55 @@ public class NAR_TalonFX extends NAR_Motor {
         return motor;
     }
 
+    /**
+     * Returns the position status signal, in rotations.
+     * @return The position signal.
+     */
+    public StatusSignal<Angle> getPositionSignal() {
+        return position;
+    }
+
+    /**
+     * Returns the velocity status signal, in rotations per second.
+     * @return The velocity signal.
+     */
+    public StatusSignal<AngularVelocity> getVelocitySignal() {
+        return velocity;
+    }
+
+    /**
+     * Returns the applied motor voltage status signal, in volts.
+     * @return The motor voltage signal.
+     */
+    public StatusSignal<Voltage> getMotorVoltageSignal() {
+        return motorVoltage;
+    }
+
+    /**
+     * Returns the closed loop reference status signal, in the units sent to the controller.
+     * @return The closed loop reference signal.
+     */
+    public StatusSignal<Double> getClosedLoopReferenceSignal() {
+        return closedLoopReference;
+    }
+
+    /**
+     * Returns the closed loop error status signal, in the units sent to the controller.
+     * @return The closed loop error signal.
+     */
+    public StatusSignal<Double> getClosedLoopErrorSignal() {
+        return closedLoopError;
+    }
+
+    /**
+     * Converts a velocity signal value to the units of {@link #getVelocity()}.
+     * @param rotationsPerSecond Velocity in rotations per second.
+     * @return Velocity in the motor's configured units.
+     */
+    public double toVelocity(double rotationsPerSecond) {
+        return rotationsPerSecond * 60.0 * unitConversionFactor / timeConversionFactor;
+    }
+
     @Override
     public void close() {
         motor.close();
@@ -0,0 +1,328 @@
+package common.utility.estimator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+
+/**
+ * Team 3128's offline tuner for {@link SwerveDrivePoseEstimator} standard deviations.
+ *
+ * <p>NOTES:
+ * <ul>
+ * <li> Replays recorded odometry and vision through a fresh estimator for every candidate, in parallel
+ *      on a fork-join pool using every core.
+ * <li> Each candidate is scored by its translation and heading RMSE against ground truth checkpoints,
+ *      and the candidates no other candidate beats on both are reported as the Pareto front.
+ * <li> Logs are CSV files with a header row and times in seconds, angles in degrees, distances in meters:
+ *      odometry {@code time,yaw,distance0,angle0,distance1,angle1,...}, vision {@code time,x,y,theta},
+ *      checkpoints {@code time,x,y,theta}.
+ * </ul>
+ *
+ * @since 2025 Reefscape
+ */
+public class PoseEstimatorTuner {
+
+    /**
+     * Standard deviations to try.
+     */
+    public static class Candidate {
+        public final double stateXY;
+        public final double stateTheta;
+        public final double visionXY;
+        public final double visionTheta;
+
+        /**
+         * Creates a new candidate.
+         * @param stateXY Odometry x and y standard deviation in meters.
+         * @param stateTheta Odometry heading standard deviation in radians.
+         * @param visionXY Vision x and y standard deviation in meters.
+         * @param visionTheta Vision heading standard deviation in radians.
+         */
+        public Candidate(double stateXY, double stateTheta, double visionXY, double visionTheta) {
+            this.stateXY = stateXY;
+            this.stateTheta = stateTheta;
+            this.visionXY = visionXY;
+            this.visionTheta = visionTheta;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("state (%.4f, %.4f, %.4f) vision (%.4f, %.4f, %.4f)", stateXY, stateXY, stateTheta, visionXY, visionXY, visionTheta);
+        }
+    }
+
+    /**
+     * Score of one candidate.
+     */
+    public static class Result {
+        public final Candidate candidate;
+        public final double translationRMSE;
+        public final double headingRMSE;
+        private boolean pareto = false;
+
+        private Result(Candidate candidate, double translationRMSE, double headingRMSE) {
+            this.candidate = candidate;
+            this.translationRMSE = translationRMSE;
+            this.headingRMSE = headingRMSE;
+        }
+
+        /**
+         * Returns whether no other candidate has lower translation and heading error.
+         * @return True if the candidate is on the Pareto front.
+         */
+        public boolean isPareto() {
+            return pareto;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s -> translation %.4f m, heading %.3f deg", candidate, translationRMSE, Math.toDegrees(headingRMSE));
+        }
+    }
+
+    private final Translation2d[] moduleLocations;
+
+    private final double[] odometryTime;
+    private final Rotation2d[] gyro;
+    private final SwerveModulePosition[][] positions;
+    private final double[] visionTime;
+    private final Pose2d[] visionPose;
+    private final double[] truthTime;
+    private final Pose2d[] truthPose;
+
+    /**
+     * Loads recorded logs for replay.
+     * @param moduleLocations Location of each module relative to the robot center, in meters.
+     * @param odometryLog Odometry log, one row per odometry update.
+     * @param visionLog Vision log, one row per vision measurement.
+     * @param checkpointLog Ground truth poses, the first one is the starting pose.
+     * @throws IOException If a log can not be read.
+     */
+    public PoseEstimatorTuner(Translation2d[] moduleLocations, Path odometryLog, Path visionLog, Path checkpointLog) throws IOException {
+        this.moduleLocations = moduleLocations;
+
+        final double[][] odometry = read(odometryLog, 2 + 2 * moduleLocations.length);
+        odometryTime = new double[odometry.length];
+        gyro = new Rotation2d[odometry.length];
+        positions = new SwerveModulePosition[odometry.length][moduleLocations.length];
+        for (int i = 0; i < odometry.length; i++) {
+            odometryTime[i] = odometry[i][0];
+            gyro[i] = Rotation2d.fromDegrees(odometry[i][1]);
+            for (int j = 0; j < moduleLocations.length; j++) {
+                positions[i][j] = new SwerveModulePosition(odometry[i][2 + 2 * j], Rotation2d.fromDegrees(odometry[i][3 + 2 * j]));
+            }
+        }
+
+        final double[][] vision = read(visionLog, 4);
+        visionTime = new double[vision.length];
+        visionPose = new Pose2d[vision.length];
+        for (int i = 0; i < vision.length; i++) {
+            visionTime[i] = vision[i][0];
+            visionPose[i] = new Pose2d(vision[i][1], vision[i][2], Rotation2d.fromDegrees(vision[i][3]));
+        }
+
+        final double[][] truth = read(checkpointLog, 4);
+        truthTime = new double[truth.length];
+        truthPose = new Pose2d[truth.length];
+        for (int i = 0; i < truth.length; i++) {
+            truthTime[i] = truth[i][0];
+            truthPose[i] = new Pose2d(truth[i][1], truth[i][2], Rotation2d.fromDegrees(truth[i][3]));
+        }
+        if (odometryTime.length == 0 || truthTime.length == 0) throw new IllegalArgumentException("Odometry and checkpoint logs can not be empty");
+    }
+
+    private static double[][] read(Path log, int columns) throws IOException {
+        final List<String> lines = Files.readAllLines(log);
+        final ArrayList<double[]> rows = new ArrayList<double[]>();
+        for (int i = 1; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty()) continue;
+            final String[] cells = line.split(",");
+            if (cells.length < columns) throw new IllegalArgumentException(log + " line " + (i + 1) + " needs " + columns + " columns");
+            final double[] row = new double[columns];
+            for (int j = 0; j < columns; j++) {
+                row[j] = Double.parseDouble(cells[j].trim());
+            }
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparingDouble(row -> row[0]));
+        return rows.toArray(new double[0][]);
+    }
+
+    /**
+     * Replays the logs with one candidate's standard deviations.
+     * @param candidate Standard deviations to use.
+     * @return The candidate's score.
+     */
+    public Result evaluate(Candidate candidate) {
+        // kinematics keep internal state, so every replay gets its own
+        final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleLocations);
+        final SwerveDrivePoseEstimator estimator = new SwerveDrivePoseEstimator(kinematics, gyro[0], positions[0], truthPose[0],
+            VecBuilder.fill(candidate.stateXY, candidate.stateXY, candidate.stateTheta),
+            VecBuilder.fill(candidate.visionXY, candidate.visionXY, candidate.visionTheta));
+
+        int odometry = 0;
+        int vision = 0;
+        double translationSum = 0;
+        double headingSum = 0;
+        int count = 0;
+        for (int checkpoint = 1; checkpoint < truthTime.length; checkpoint++) {
+            final double time = truthTime[checkpoint];
+            // feed everything up to the checkpoint in time order
+            while (odometry < odometryTime.length && odometryTime[odometry] <= time) {
+                while (vision < visionTime.length && visionTime[vision] <= odometryTime[odometry]) {
+                    estimator.addVisionMeasurement(visionPose[vision], visionTime[vision]);
+                    vision++;
+                }
+                estimator.updateWithTime(odometryTime[odometry], gyro[odometry], positions[odometry]);
+                odometry++;
+            }
+            final Pose2d estimate = estimator.getEstimatedPosition();
+            final Pose2d truth = truthPose[checkpoint];
+            final double dx = estimate.getX() - truth.getX();
+            final double dy = estimate.getY() - truth.getY();
+            final double dtheta = MathUtil.angleModulus(estimate.getRotation().getRadians() - truth.getRotation().getRadians());
+            translationSum += dx * dx + dy * dy;
+            headingSum += dtheta * dtheta;
+            count++;
+        }
+        return new Result(candidate, Math.sqrt(translationSum / Math.max(1, count)), Math.sqrt(headingSum / Math.max(1, count)));
+    }
+
+    /**
+     * Scores every candidate in parallel and marks the Pareto front.
+     * @param candidates Candidates to score.
+     * @return Results sorted by translation error.
+     */
+    public Result[] evaluate(Candidate[] candidates) {
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        final Result[] results;
+        try {
+            results = pool.submit(()-> IntStream.range(0, candidates.length).parallel()
+                .mapToObj(i -> evaluate(candidates[i])).toArray(Result[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result[0];
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        Arrays.sort(results, Comparator.<Result>comparingDouble(result -> result.translationRMSE).thenComparingDouble(result -> result.headingRMSE));
+        double bestHeading = Double.POSITIVE_INFINITY;
+        for (final Result result : results) {
+            if (result.headingRMSE < bestHeading) {
+                result.pareto = true;
+                bestHeading = result.headingRMSE;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Creates every combination of the given standard deviations.
+     * @param stateXY Odometry x and y standard deviations in meters.
+     * @param stateTheta Odometry heading standard deviations in radians.
+     * @param visionXY Vision x and y standard deviations in meters.
+     * @param visionTheta Vision heading standard deviations in radians.
+     * @return The candidates.
+     */
+    public static Candidate[] grid(double[] stateXY, double[] stateTheta, double[] visionXY, double[] visionTheta) {
+        final ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+        for (final double a : stateXY)
+            for (final double b : stateTheta)
+                for (final double c : visionXY)
+                    for (final double d : visionTheta)
+                        candidates.add(new Candidate(a, b, c, d));
+        return candidates.toArray(new Candidate[0]);
+    }
+
+    /**
+     * Draws candidates log-uniformly between the bounds of each standard deviation.
+     * @param count Number of candidates.
+     * @param seed Random seed, so sweeps are repeatable.
+     * @param min Lower bounds of stateXY, stateTheta, visionXY and visionTheta.
+     * @param max Upper bounds of stateXY, stateTheta, visionXY and visionTheta.
+     * @return The candidates.
+     */
+    public static Candidate[] random(int count, long seed, double[] min, double[] max) {
+        final Random random = new Random(seed);
+        final Candidate[] candidates = new Candidate[count];
+        final double[] values = new double[4];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < values.length; j++) {
+                values[j] = Math.exp(Math.log(min[j]) + random.nextDouble() * (Math.log(max[j]) - Math.log(min[j])));
+            }
+            candidates[i] = new Candidate(values[0], values[1], values[2], values[3]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Writes every result to a CSV file.
+     * @param results Results to write.
+     * @param file Output file.
+     * @throws IOException If the file can not be written.
+     */
+    public static void write(Result[] results, Path file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.println("stateXY,stateTheta,visionXY,visionTheta,translationRMSE,headingRMSE,pareto");
+            for (final Result result : results) {
+                final Candidate candidate = result.candidate;
+                writer.println(String.format("%.6f,%.6f,%.6f,%.6f,%.6f,%.6f,%b", candidate.stateXY, candidate.stateTheta,
+                    candidate.visionXY, candidate.visionTheta, result.translationRMSE, result.headingRMSE, result.pareto));
+            }
+        }
+    }
+
+    /**
+     * Runs a random sweep from the command line.
+     * <p>Arguments: odometry log, vision log, checkpoint log, module locations as {@code x0,y0;x1,y1;...},
+     * number of candidates, output CSV.
+     * @param args Command line arguments.
+     * @throws IOException If a file can not be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.out.println("Usage: PoseEstimatorTuner odometry.csv vision.csv checkpoints.csv \"x0,y0;x1,y1;...\" candidates results.csv");
+            return;
+        }
+        final String[] locations = args[3].split(";");
+        final Translation2d[] moduleLocations = new Translation2d[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            final String[] xy = locations[i].split(",");
+            moduleLocations[i] = new Translation2d(Double.parseDouble(xy[0].trim()), Double.parseDouble(xy[1].trim()));
+        }
+
+        final PoseEstimatorTuner tuner = new PoseEstimatorTuner(moduleLocations, Paths.get(args[0]), Paths.get(args[1]), Paths.get(args[2]));
+        final Candidate[] candidates = random(Integer.parseInt(args[4]), 3128, new double[] {0.005, 0.005, 0.05, 0.05}, new double[] {1, 1, 10, 100});
+
+        final long start = System.nanoTime();
+        final Result[] results = tuner.evaluate(candidates);
+        System.out.println(String.format("Scored %d candidates in %.2f s", results.length, (System.nanoTime() - start) / 1e9));
+        for (final Result result : results) {
+            if (result.isPareto()) System.out.println(result);
+        }
+        write(results, Paths.get(args[5]));
+    }
+}
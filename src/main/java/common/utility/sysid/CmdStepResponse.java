@@ -0,0 +1,285 @@
+package common.utility.sysid;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.ctre.phoenix6.Utils;
+
+import common.core.misc.BackgroundExecutor;
+import common.hardware.motorcontroller.NAR_Motor;
+import common.hardware.motorcontroller.NAR_Motor.Control;
+import common.hardware.motorcontroller.NAR_TalonFX;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+/**
+ * Team 3128's command to measure closed loop step responses.
+ * <p>Steps each motor through a list of position or velocity setpoints and records the setpoint and
+ * measured value. TalonFX motors are recorded from their closed loop reference and error signals at
+ * the signal rate, in controller units. Other motors are sampled once per loop in their configured units.
+ * <p>Dead time, rise time, overshoot, settling time and steady-state error are published under
+ * StepResponse/name and written to step_response_name.csv in the operating directory.
+ * @since 2025 Reefscape
+ */
+public class CmdStepResponse extends Command {
+
+    private static final double DEAD_BAND = 0.02;
+    private static final double SETTLING_BAND = 0.02;
+    private static final double STEADY_STATE_FRACTION = 0.2;
+
+    /**
+     * Step response metrics of one step.
+     */
+    public static class Metrics {
+        public final double setpoint;
+        public final double deadTime;
+        public final double riseTime;
+        public final double overshoot;
+        public final double settlingTime;
+        public final double steadyStateError;
+
+        private Metrics(double setpoint, double deadTime, double riseTime, double overshoot, double settlingTime, double steadyStateError) {
+            this.setpoint = setpoint;
+            this.deadTime = deadTime;
+            this.riseTime = riseTime;
+            this.overshoot = overshoot;
+            this.settlingTime = settlingTime;
+            this.steadyStateError = steadyStateError;
+        }
+
+        /**
+         * Measures one step from recorded samples.
+         * <p>The step starts from the last measurement before the step time and ends at the last setpoint
+         * in the window. Times that were never reached are NaN.
+         * @param time Time of each sample in seconds.
+         * @param target Setpoint of each sample.
+         * @param measured Measured value of each sample.
+         * @param n Number of samples.
+         * @param stepTime Time the step was commanded.
+         * @param endTime Time the next step was commanded.
+         * @return The step response metrics, or null if there were no samples in the window.
+         */
+        public static Metrics measure(double[] time, double[] target, double[] measured, int n, double stepTime, double endTime) {
+            int first = -1;
+            int last = -1;
+            double start = Double.NaN;
+            for (int i = 0; i < n; i++) {
+                if (time[i] < stepTime) start = measured[i];
+                else if (time[i] < endTime) {
+                    if (first < 0) first = i;
+                    last = i;
+                }
+            }
+            if (first < 0) return null;
+            if (Double.isNaN(start)) start = measured[first];
+
+            final double setpoint = target[last];
+            final double step = setpoint - start;
+            if (Math.abs(step) < 1E-9) return new Metrics(setpoint, 0, 0, 0, 0, 0);
+
+            double deadTime = Double.NaN;
+            double riseStart = Double.NaN;
+            double riseEnd = Double.NaN;
+            double peak = Double.NEGATIVE_INFINITY;
+            double settledTime = 0;
+            for (int i = first; i <= last; i++) {
+                final double progress = (measured[i] - start) / step;
+                if (Double.isNaN(deadTime) && progress >= DEAD_BAND) deadTime = time[i] - stepTime;
+                if (Double.isNaN(riseStart) && progress >= 0.1) riseStart = time[i];
+                if (Double.isNaN(riseEnd) && progress >= 0.9) riseEnd = time[i];
+                peak = Math.max(peak, progress);
+                if (Math.abs(progress - 1) > SETTLING_BAND) {
+                    settledTime = i < last ? time[i + 1] - stepTime : Double.NaN;
+                }
+            }
+
+            final double steadyStart = endTime - (endTime - stepTime) * STEADY_STATE_FRACTION;
+            double errorSum = 0;
+            int errorCount = 0;
+            for (int i = first; i <= last; i++) {
+                if (time[i] < steadyStart) continue;
+                errorSum += target[i] - measured[i];
+                errorCount++;
+            }
+
+            return new Metrics(
+                setpoint,
+                deadTime,
+                riseEnd - riseStart,
+                Math.max(0, peak - 1) * 100,
+                settledTime,
+                errorCount > 0 ? errorSum / errorCount : Double.NaN
+            );
+        }
+    }
+
+    private final String name;
+    private final NAR_Motor[] motors;
+    private final Control mode;
+    private final double[] setpoints;
+    private final double holdSecs;
+
+    private final SignalCapture[] captures;
+    private final SampleBuffer[] timeData;
+    private final SampleBuffer[] targetData;
+    private final SampleBuffer[] measuredData;
+    private final double[] stepTimes;
+
+    private final Timer timer = new Timer();
+    private int step;
+
+    /**
+     * Creates a new command to measure closed loop step responses.
+     * @param name Name of the test.
+     * @param mode Position or Velocity control.
+     * @param holdSecs Time to hold each setpoint.
+     * @param setpoints Setpoints to step through, in the motors' configured units.
+     * @param motors Motors to step, already configured with the gains under test.
+     * @param subsystems Subsystems used.
+     */
+    public CmdStepResponse(String name, Control mode, double holdSecs, double[] setpoints, NAR_Motor[] motors, Subsystem... subsystems) {
+        if (mode == Control.PercentOutput) throw new IllegalArgumentException("Step response requires Position or Velocity control");
+        this.name = name;
+        this.mode = mode;
+        this.holdSecs = holdSecs;
+        this.setpoints = setpoints;
+        this.motors = motors;
+
+        captures = new SignalCapture[motors.length];
+        timeData = new SampleBuffer[motors.length];
+        targetData = new SampleBuffer[motors.length];
+        measuredData = new SampleBuffer[motors.length];
+        for (int i = 0; i < motors.length; i++) {
+            if (motors[i] instanceof NAR_TalonFX) {
+                final NAR_TalonFX talon = (NAR_TalonFX) motors[i];
+                // Clones, the main loop keeps refreshing the motor's own signal objects
+                captures[i] = new SignalCapture(1000, talon.getClosedLoopReferenceSignal().clone(), talon.getClosedLoopErrorSignal().clone());
+            }
+            timeData[i] = new SampleBuffer();
+            targetData[i] = new SampleBuffer();
+            measuredData[i] = new SampleBuffer();
+        }
+        stepTimes = new double[setpoints.length + 1];
+
+        addRequirements(subsystems);
+    }
+
+    @Override
+    public void initialize() {
+        for (int i = 0; i < motors.length; i++) {
+            timeData[i].clear();
+            targetData[i].clear();
+            measuredData[i].clear();
+            if (captures[i] != null) captures[i].start();
+        }
+        step = -1;
+        timer.restart();
+    }
+
+    @Override
+    public void execute() {
+        final int current = Math.min((int) (timer.get() / holdSecs), setpoints.length - 1);
+        if (current != step) {
+            step = current;
+            stepTimes[step] = Utils.getCurrentTimeSeconds();
+            for (final NAR_Motor motor : motors) {
+                motor.set(setpoints[step], mode);
+            }
+        }
+
+        for (int i = 0; i < motors.length; i++) {
+            if (captures[i] != null) continue;
+            final NAR_Motor motor = motors[i];
+            timeData[i].add(Utils.getCurrentTimeSeconds());
+            targetData[i].add(setpoints[step]);
+            measuredData[i].add(mode == Control.Position ? motor.getPosition() : motor.getVelocity());
+        }
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        stepTimes[setpoints.length] = Utils.getCurrentTimeSeconds();
+        for (final NAR_Motor motor : motors) {
+            motor.set(0);
+        }
+        for (int i = 0; i < motors.length; i++) {
+            if (captures[i] == null) continue;
+            captures[i].stop();
+            final SampleBuffer time = timeData[i];
+            final SampleBuffer target = targetData[i];
+            final SampleBuffer measured = measuredData[i];
+            captures[i].drain((timestamp, values) -> {
+                time.add(timestamp);
+                target.add(values[0]);
+                measured.add(values[0] - values[1]);
+            });
+        }
+
+        final int steps = step + 1;
+        final double[] commandTimes = stepTimes.clone();
+        commandTimes[steps] = stepTimes[setpoints.length];
+        final double[][] times = new double[motors.length][];
+        final double[][] targets = new double[motors.length][];
+        final double[][] measurements = new double[motors.length][];
+        final int[] counts = new int[motors.length];
+        for (int i = 0; i < motors.length; i++) {
+            times[i] = timeData[i].array();
+            targets[i] = targetData[i].array();
+            measurements[i] = measuredData[i].array();
+            counts[i] = timeData[i].size();
+            timeData[i] = new SampleBuffer();
+            targetData[i] = new SampleBuffer();
+            measuredData[i] = new SampleBuffer();
+        }
+
+        BackgroundExecutor.run(() -> report(steps, commandTimes, times, targets, measurements, counts));
+    }
+
+    @Override
+    public boolean isFinished() {
+        return timer.get() >= holdSecs * setpoints.length;
+    }
+
+    /**
+     * Measures every step of every motor and publishes the averages.
+     */
+    private void report(int steps, double[] commandTimes, double[][] times, double[][] targets, double[][] measurements, int[] counts) {
+        final NetworkTable table = NetworkTableInstance.getDefault().getTable("StepResponse").getSubTable(name);
+        final Path file = Filesystem.getOperatingDirectory().toPath().resolve("step_response_" + name + ".csv");
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.println("motor,step,setpoint,deadTime,riseTime,overshootPercent,settlingTime,steadyStateError");
+            for (int i = 0; i < motors.length; i++) {
+                final double[] totals = new double[5];
+                final int[] valid = new int[5];
+                for (int s = 0; s < steps; s++) {
+                    final Metrics metrics = Metrics.measure(times[i], targets[i], measurements[i], counts[i], commandTimes[s], commandTimes[s + 1]);
+                    if (metrics == null) continue;
+                    writer.println(String.format("%d,%d,%.5f,%.5f,%.5f,%.3f,%.5f,%.5f", i, s, metrics.setpoint, metrics.deadTime,
+                        metrics.riseTime, metrics.overshoot, metrics.settlingTime, metrics.steadyStateError));
+                    final double[] values = {metrics.deadTime, metrics.riseTime, metrics.overshoot, metrics.settlingTime, Math.abs(metrics.steadyStateError)};
+                    for (int j = 0; j < values.length; j++) {
+                        if (Double.isNaN(values[j])) continue;
+                        totals[j] += values[j];
+                        valid[j]++;
+                    }
+                }
+
+                final NetworkTable motorTable = table.getSubTable(Integer.toString(i));
+                final String[] keys = {"DeadTime", "RiseTime", "Overshoot", "SettlingTime", "SteadyStateError"};
+                for (int j = 0; j < keys.length; j++) {
+                    motorTable.getEntry(keys[j]).setDouble(valid[j] > 0 ? totals[j] / valid[j] : Double.NaN);
+                }
+            }
+            System.out.println("Step response (" + name + ") written to " + file);
+        } catch (IOException e) {
+            System.out.println("Step response (" + name + ") could not write " + file + ": " + e.getMessage());
+        }
+    }
+}
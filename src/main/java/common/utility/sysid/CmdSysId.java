@@ -1,5 +1,9 @@
 package common.utility.sysid;
 
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.Utils;
+
+import common.hardware.motorcontroller.NAR_TalonFX;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Subsystem;
@@ -26,6 +30,13 @@ public class CmdSysId extends Command {
 
     private final Timer timer = new Timer();
 
+    private double convergenceTolerance = 0;
+    private Consumer<FFCharacterization.Result> resultConsumer = null;
+
+    private SignalCapture capture = null;
+    private NAR_TalonFX[] captureMotors;
+    private double captureStartTime;
+
     /**
      * Creates a new command to identify feed forward constants of the subsystem.
      * @param name Name of the test.
@@ -90,6 +101,10 @@ public class CmdSysId extends Command {
         data.clear();
         setVoltage(0.0);
         timer.restart();
+        if (capture != null) {
+            captureStartTime = Utils.getCurrentTimeSeconds() + startDelaySecs;
+            capture.start();
+        }
     }
 
     @Override
@@ -98,22 +113,64 @@ public class CmdSysId extends Command {
 
         double voltage = (timer.get() - startDelaySecs) * rampRateVoltsPerSec * (goingForward ? 1 : -1);
         setVoltage(voltage);
-        updateData(voltage);
+        if (capture != null) updateCapturedData();
+        else updateData(voltage);
+        data.getEstimator().publish();
     }
 
     @Override
     public void end(boolean interrupted) {
         setVoltage(0.0);
         timer.stop();
-        data.print();
+        if (capture != null) {
+            capture.stop();
+            updateCapturedData();
+        }
+        data.analyzeAsync(resultConsumer);
     }
 
     @Override
     public boolean isFinished() {
+        if (convergenceTolerance > 0 && data.getEstimator().isConverged(convergenceTolerance)) return true;
         return goingForward ? Math.abs(positionSupplier.get()) >= targetPosition : 
                                 Math.abs(positionSupplier.get()) <= targetPosition;
     }
 
+    /**
+     * Ends the test early once the streaming kS, kV and kA estimates stop changing.
+     * @param tolerance Maximum relative change between estimate checks, 0 to disable.
+     */
+    public void setConvergenceTolerance(double tolerance) {
+        convergenceTolerance = tolerance;
+    }
+
+    /**
+     * Sets a consumer for the feedforward constants found when the test ends.
+     * <p>The analysis runs on a background thread, the consumer is called on the main loop.
+     * @param resultConsumer Consumer for the kS, kV, kA and R2 results.
+     */
+    public void setResultConsumer(Consumer<FFCharacterization.Result> resultConsumer) {
+        this.resultConsumer = resultConsumer;
+    }
+
+    /**
+     * Records samples from the motors' own timestamped status signals instead of once per loop.
+     * <p>Velocity and applied voltage are averaged across all of the motors, so every motor driven by
+     * the test should be passed in.
+     * @param frequencyHz Signal update frequency while the test runs, ie. 250 to 1000.
+     * @param motors Motors driven by the test.
+     */
+    public void setHighRateCapture(double frequencyHz, NAR_TalonFX... motors) {
+        final BaseStatusSignal[] signals = new BaseStatusSignal[motors.length * 2];
+        for (int i = 0; i < motors.length; i++) {
+            // Clones, the main loop keeps refreshing the motors' own signal objects
+            signals[2 * i] = motors[i].getVelocitySignal().clone();
+            signals[2 * i + 1] = motors[i].getMotorVoltageSignal().clone();
+        }
+        captureMotors = motors;
+        capture = new SignalCapture(frequencyHz, signals);
+    }
+
     /**
      * Sets voltage of subsystem motors.
      * @param voltage Voltage to be applied to subsystem
@@ -129,4 +186,21 @@ public class CmdSysId extends Command {
     private void updateData(double voltage) {
         data.add(timer.get() - startDelaySecs, velocitySupplier.get(), voltage);
     }
+
+    /**
+     * Adds the averaged velocity and voltage of every sample captured since the last loop.
+     */
+    private void updateCapturedData() {
+        capture.drain((timestamp, values) -> {
+            final double time = timestamp - captureStartTime;
+            if (time < 0) return;
+            double velocity = 0;
+            double voltage = 0;
+            for (int i = 0; i < captureMotors.length; i++) {
+                velocity += Math.abs(captureMotors[i].toVelocity(values[2 * i]));
+                voltage += Math.abs(values[2 * i + 1]);
+            }
+            data.add(time, velocity / captureMotors.length, voltage / captureMotors.length);
+        });
+    }
 }
\ No newline at end of file
@@ -1,6 +1,11 @@
 package common.utility.sysid;
 
-import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import common.core.misc.BackgroundExecutor;
+import common.core.misc.NAR_Robot;
+import edu.wpi.first.wpilibj.DriverStation;
 
 /**
  * Team 3128's wrapper class to store feedforward constants data.
@@ -10,15 +15,11 @@ import java.util.LinkedList;
 public class FFCharacterization {
 
     private final String name;
-    private final LinkedList<Double> velocityData = new LinkedList<>();
-    private final LinkedList<Double> angularVelocityData = new LinkedList<>();
-    private final LinkedList<Double> voltageData = new LinkedList<>();
-    private final LinkedList<Double> timeData = new LinkedList<>();
-    private final LinkedList<Double> accelerationData = new LinkedList<>();
-    private final LinkedList<Double> adjustedVoltageData = new LinkedList<>();
-    private PolynomialRegression voltageVelocityRegression;
-    private PolynomialRegression velocityTimeRegression;
-    private PolynomialRegression voltageAccelerationRegression;
+    private SampleBuffer velocityData = new SampleBuffer();
+    private SampleBuffer angularVelocityData = new SampleBuffer();
+    private SampleBuffer voltageData = new SampleBuffer();
+    private SampleBuffer timeData = new SampleBuffer();
+    private final StreamingFFEstimator estimator;
 
     private double kS;
     private double kV;
@@ -31,6 +32,7 @@ public class FFCharacterization {
      */
     public FFCharacterization(String name) {
       this.name = name;
+      this.estimator = new StreamingFFEstimator(name);
     }
 
     /**
@@ -44,6 +46,7 @@ public class FFCharacterization {
         velocityData.add(Math.abs(velocity));
         voltageData.add(Math.abs(voltage));
         timeData.add(time);
+        estimator.add(time, velocity, voltage);
       }
     }
 
@@ -59,62 +62,154 @@ public class FFCharacterization {
           angularVelocityData.add(Math.abs(angularVelocity));
           voltageData.add(Math.abs(voltage));
           timeData.add(time);
+          estimator.add(time, velocity, voltage);
         }
       }
 
+    /**
+     * Feedforward constants calculated from a set of samples.
+     */
+    public static class Result {
+        public final String name;
+        public final int count;
+        public final double kS;
+        public final double kV;
+        public final double kA;
+        public final double r2;
+
+        private Result(String name, int count, double kS, double kV, double kA, double r2) {
+            this.name = name;
+            this.count = count;
+            this.kS = kS;
+            this.kV = kV;
+            this.kA = kA;
+            this.r2 = r2;
+        }
+
+        /**
+         * Display the feedforward constants.
+         */
+        public void print() {
+            System.out.println("FF Characterization Results (" + name + "):");
+            System.out.println(
+                "\tCount=" + Integer.toString(count) + ""
+            );
+            System.out.println(String.format("\tR2=%.5f", r2));            //R2
+            System.out.println(String.format("\tkS=%.5f", kS));            //ks
+            System.out.println(String.format("\tkV=%.5f", kV));            //kv
+            System.out.println(String.format("\tkA=%.5f", kA));            //ka
+            System.out.println(String.format("\tM=%.5f", 0.0));
+        }
+    }
+
     /**
      * Display the feedforward constants calculated from the data.
      */
     public void print() {
-        if (velocityData.size() == 0 || voltageData.size() == 0) {
+        final Result result = analyze(name, timeData.array(), velocityData.array(), voltageData.array(), velocityData.size());
+        if (result == null) {
             System.out.println("Test failed");
             return;
         }
+        setResult(result);
+        result.print();
+    }
+
+    /**
+     * Calculates and displays the feedforward constants on the background thread.
+     * <p>The sample arrays are handed to the analysis without copying and this object starts
+     * new buffers, so it can be reused right away.
+     * @param callback Called on the main loop with the results, skipped if the test failed.
+     * @return A future completed with the results, or null if the test failed, exceptionally if the analysis threw.
+     */
+    public CompletableFuture<Result> analyzeAsync(Consumer<Result> callback) {
+        final double[] time = timeData.array();
+        final double[] velocity = velocityData.array();
+        final double[] voltage = voltageData.array();
+        final int n = velocityData.size();
+        timeData = new SampleBuffer();
+        velocityData = new SampleBuffer();
+        angularVelocityData = new SampleBuffer();
+        voltageData = new SampleBuffer();
+
+        final CompletableFuture<Result> future = BackgroundExecutor.supply(() -> {
+            final Result result = analyze(name, time, velocity, voltage, n);
+            if (result == null) System.out.println("Test failed");
+            else result.print();
+            return result;
+        });
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                final Throwable cause = error.getCause() != null ? error.getCause() : error;
+                DriverStation.reportError("Test failed, analysis of " + name + " threw " + cause, cause.getStackTrace());
+                return;
+            }
+            if (result == null) return;
+            NAR_Robot.runOnMainLoop(() -> {
+                setResult(result);
+                if (callback != null) callback.accept(result);
+            });
+        });
+        return future;
+    }
+
+    private void setResult(Result result) {
+        kS = result.kS;
+        kV = result.kV;
+        kA = result.kA;
+    }
+
+    /**
+     * Calculates the feedforward constants from the first n samples of the arrays.
+     * @param name Name of the Subsystem.
+     * @param time Time of each sample.
+     * @param velocity Absolute velocity of each sample.
+     * @param voltage Absolute voltage of each sample.
+     * @param n Number of samples.
+     * @return The feedforward constants, or null if there are no samples.
+     */
+    private static Result analyze(String name, double[] time, double[] velocity, double[] voltage, int n) {
+        if (n == 0) return null;
 
         //calculates regression function for voltage v velocity
-        voltageVelocityRegression = new PolynomialRegression(
-            velocityData.stream().mapToDouble(Double::doubleValue).toArray(),
-            voltageData.stream().mapToDouble(Double::doubleValue).toArray(),
+        final PolynomialRegression voltageVelocityRegression = new PolynomialRegression(
+            velocity,
+            voltage,
+            n,
             1
         );
 
-        kS = voltageVelocityRegression.beta(0);
-        kV = voltageVelocityRegression.beta(1);
+        final double kS = voltageVelocityRegression.beta(0);
+        final double kV = voltageVelocityRegression.beta(1);
 
         //calculates regression function for velocity v time
-        velocityTimeRegression = new PolynomialRegression(
-            timeData.stream().mapToDouble(Double::doubleValue).toArray(),
-            velocityData.stream().mapToDouble(Double::doubleValue).toArray(),
+        final PolynomialRegression velocityTimeRegression = new PolynomialRegression(
+            time,
+            velocity,
+            n,
             4
         );
 
         //calculates acceleration data from derivative of velocity v time regression function
-        accelerationData.addAll(
-            new PolynomialDerivative(velocityTimeRegression).evaluate(timeData)
-        );
+        final double[] acceleration = new double[n];
+        new PolynomialDerivative(velocityTimeRegression).evaluate(time, n, acceleration);
 
-        for(int i = 0; i < voltageData.size(); i++){
-            adjustedVoltageData.add(i, (voltageData.get(i) - kS) - (kV * velocityData.get(i)));
+        final double[] adjustedVoltage = new double[n];
+        for(int i = 0; i < n; i++){
+            adjustedVoltage[i] = (voltage[i] - kS) - (kV * velocity[i]);
         }
 
         //calculates regression function for voltage v acceleration
-        voltageAccelerationRegression = new PolynomialRegression(
-            accelerationData.stream().mapToDouble(Double::doubleValue).toArray(),
-            adjustedVoltageData.stream().mapToDouble(Double::doubleValue).toArray(),
+        final PolynomialRegression voltageAccelerationRegression = new PolynomialRegression(
+            acceleration,
+            adjustedVoltage,
+            n,
             1
         );
 
-        kA = voltageAccelerationRegression.beta(1);
+        final double kA = voltageAccelerationRegression.beta(1);
 
-        System.out.println("FF Characterization Results (" + name + "):");
-        System.out.println(
-            "\tCount=" + Integer.toString(velocityData.size()) + ""
-        );
-        System.out.println(String.format("\tR2=%.5f", voltageVelocityRegression.R2()));            //R2
-        System.out.println(String.format("\tkS=%.5f", kS));                                        //ks
-        System.out.println(String.format("\tkV=%.5f", kV));                                        //kv
-        System.out.println(String.format("\tkA=%.5f", kA));                                        //ka
-        System.out.println(String.format("\tM=%.5f", 0));        //R2
+        return new Result(name, n, kS, kV, kA, voltageVelocityRegression.R2());
     }
 
     /**
@@ -141,14 +236,22 @@ public class FFCharacterization {
         return kA;
     }
 
+    /**
+     * Returns the streaming estimator updated with every sample.
+     * @return Returns the live kS, kV and kA estimator.
+     */
+    public StreamingFFEstimator getEstimator() {
+        return estimator;
+    }
+
     /**
      * Clears the data stored in the FFCharacterization object.
      */
     public void clear() {
         velocityData.clear();
+        angularVelocityData.clear();
         voltageData.clear();
         timeData.clear();
-        accelerationData.clear();
-        adjustedVoltageData.clear();
+        estimator.clear();
     }
 }
\ No newline at end of file
@@ -32,9 +32,10 @@ public class PolynomialDerivative {
      * @return Derivative value at the specified x-value.
      */
     public double evaluate(double x){
+        // horner's method
         double y = 0;
-        for(int i = 0; i < derivativeCoefficients.length; i++){
-            y += derivativeCoefficients[i] * Math.pow(x, i);
+        for(int i = derivativeCoefficients.length - 1; i >= 0; i--){
+            y = derivativeCoefficients[i] + x * y;
         }
         return y;
     }
@@ -51,4 +52,16 @@ public class PolynomialDerivative {
         }
         return output;
     }
+
+    /**
+     * Writes y-values into an output array by plugging in the x-values into the derivative function.
+     * @param inputs Array of x-values.
+     * @param n Number of x-values to use from the front of the array.
+     * @param output Array to store the derivative values in, at least n long.
+     */
+    public void evaluate(double[] inputs, int n, double[] output){
+        for(int i = 0; i < n; i++){
+            output[i] = evaluate(inputs[i]);
+        }
+    }
   }
\ No newline at end of file
@@ -1,8 +1,5 @@
 package common.utility.sysid;
 
-import Jama.Matrix;
-import Jama.QRDecomposition;
-
 // NOTE: This file is available at
 // http://algs4.cs.princeton.edu/14analysis/PolynomialRegression.java.html
 
@@ -16,8 +13,11 @@ import Jama.QRDecomposition;
  * residuals of the multiple regression model. It also computes associated the coefficient of
  * determination <em>R</em><sup>2</sup>.
  *
- * <p>This implementation performs a QR-decomposition of the underlying Vandermonde matrix, so it is
- * neither the fastest nor the most numerically stable way to perform the polynomial regression.
+ * <p>This implementation centers and scales the predictor variable to [-1, 1], builds the powers of
+ * the Vandermonde matrix by repeated multiplication into a single column-major array, and performs
+ * a Householder QR-decomposition in place. Columns are factored left to right, so a rank deficient
+ * column lowers the degree without rebuilding the matrix, and the sum of squared errors is read off
+ * the transformed response. The coefficients are mapped back to powers of the original variable.
  *
  * @author Robert Sedgewick
  * @author Kevin Wayne
@@ -25,7 +25,9 @@ import Jama.QRDecomposition;
 public class PolynomialRegression implements Comparable<PolynomialRegression> {
     private final String variableName; // name of the predictor variable
     private int degree; // degree of the polynomial regression
-    private Matrix beta; // the polynomial regression coefficients
+    private static final double RANK_TOLERANCE = 1E-10; // relative column norm treated as rank deficient
+
+    private double[] beta; // the polynomial regression coefficients
     private double sse; // sum of squares due to error
     private double sst; // total sum of squares
 
@@ -52,54 +54,132 @@ public class PolynomialRegression implements Comparable<PolynomialRegression> {
      * @throws IllegalArgumentException if the lengths of the two arrays are not equal
      */
     public PolynomialRegression(double[] x, double[] y, int degree, String variableName) {
+        this(x, y, x.length, degree, variableName);
+    }
+
+    /**
+     * Performs a polynomial reggression on the first {@code n} data points {@code (y[i], x[i])}.
+     * Uses n as the name of the predictor variable.
+     *
+     * @param x the values of the predictor variable
+     * @param y the corresponding values of the response variable
+     * @param n the number of data points to use from the front of the arrays
+     * @param degree the degree of the polynomial to fit
+     * @throws IllegalArgumentException if either array is shorter than {@code n}
+     */
+    public PolynomialRegression(double[] x, double[] y, int n, int degree) {
+        this(x, y, n, degree, "n");
+    }
+
+    /**
+     * Performs a polynomial reggression on the first {@code n} data points {@code (y[i], x[i])}.
+     *
+     * @param x the values of the predictor variable
+     * @param y the corresponding values of the response variable
+     * @param n the number of data points to use from the front of the arrays
+     * @param degree the degree of the polynomial to fit
+     * @param variableName the name of the predictor variable
+     * @throws IllegalArgumentException if either array is shorter than {@code n}
+     */
+    public PolynomialRegression(double[] x, double[] y, int n, int degree, String variableName) {
+        if (x.length < n || y.length < n) throw new IllegalArgumentException("Arrays are shorter than the number of data points");
         this.degree = degree;
         this.variableName = variableName;
 
-        int n = x.length;
-        QRDecomposition qr = null;
-        Matrix matrixX = null;
+        // center and scale x to [-1, 1] to keep the Vandermonde matrix well conditioned
+        double mean = 0.0;
+        for (int i = 0; i < n; i++) mean += x[i];
+        mean = n > 0 ? mean / n : 0.0;
+        double scale = 0.0;
+        for (int i = 0; i < n; i++) scale = Math.max(scale, Math.abs(x[i] - mean));
+        if (scale == 0.0) scale = 1.0;
+        final double invScale = 1.0 / scale;
 
-        // in case Vandermonde matrix does not have full rank, reduce degree until it
-        // does
-        while (true) {
+        // build column-major Vandermonde matrix of the scaled variable by repeated multiplication
+        final int columns = degree + 1;
+        final double[] a = new double[n * columns];
+        for (int i = 0; i < n; i++) a[i] = 1.0;
+        for (int j = 1; j < columns; j++) {
+            final int col = j * n;
+            final int prev = col - n;
+            for (int i = 0; i < n; i++) a[col + i] = a[prev + i] * ((x[i] - mean) * invScale);
+        }
 
-            // build Vandermonde matrix
-            double[][] vandermonde = new double[n][this.degree + 1];
-            for (int i = 0; i < n; i++) {
-            for (int j = 0; j <= this.degree; j++) {
-                vandermonde[i][j] = Math.pow(x[i], j);
+        final double[] qty = new double[n];
+        System.arraycopy(y, 0, qty, 0, n);
+        final double[] rdiag = new double[columns];
+
+        // householder QR, one column at a time. If a column is rank deficient the columns before it
+        // are already factored, so the degree is lowered and the factorization stops there.
+        for (int k = 0; k < columns; k++) {
+            final int col = k * n;
+            double total = 0.0;
+            for (int i = 0; i < n; i++) total += a[col + i] * a[col + i];
+            double nrm = 0.0;
+            for (int i = k; i < n; i++) nrm += a[col + i] * a[col + i];
+            nrm = Math.sqrt(nrm);
+            if (k >= n || nrm <= RANK_TOLERANCE * Math.sqrt(total)) {
+                this.degree = k - 1;
+                break;
             }
+
+            if (a[col + k] < 0) nrm = -nrm;
+            for (int i = k; i < n; i++) a[col + i] /= nrm;
+            a[col + k] += 1.0;
+
+            for (int j = k + 1; j < columns; j++) {
+                final int other = j * n;
+                double s = 0.0;
+                for (int i = k; i < n; i++) s += a[col + i] * a[other + i];
+                s = -s / a[col + k];
+                for (int i = k; i < n; i++) a[other + i] += s * a[col + i];
             }
-            matrixX = new Matrix(vandermonde);
 
-            // find least squares solution
-            qr = new QRDecomposition(matrixX);
-            if (qr.isFullRank()) break;
+            double s = 0.0;
+            for (int i = k; i < n; i++) s += a[col + i] * qty[i];
+            s = -s / a[col + k];
+            for (int i = k; i < n; i++) qty[i] += s * a[col + i];
 
-            // decrease degree and try again
-            this.degree--;
+            rdiag[k] = -nrm;
         }
 
-        // create matrix from vector
-        Matrix matrixY = new Matrix(y, n);
+        // back substitution for the coefficients of the scaled variable
+        final int rank = this.degree + 1;
+        final double[] gamma = new double[rank];
+        for (int k = rank - 1; k >= 0; k--) {
+            double value = qty[k];
+            for (int j = k + 1; j < rank; j++) value -= a[j * n + k] * gamma[j];
+            gamma[k] = value / rdiag[k];
+        }
 
-        // linear regression coefficients
-        beta = qr.solve(matrixY);
+        // variation not accounted for is the part of Q'y outside the column space
+        for (int i = rank; i < n; i++) sse += qty[i] * qty[i];
 
         // mean of y[] values
         double sum = 0.0;
         for (int i = 0; i < n; i++) sum += y[i];
-        double mean = sum / n;
+        double yMean = sum / n;
 
         // total variation to be accounted for
         for (int i = 0; i < n; i++) {
-            double dev = y[i] - mean;
+            double dev = y[i] - yMean;
             sst += dev * dev;
         }
 
-        // variation not accounted for
-        Matrix residuals = matrixX.times(beta).minus(matrixY);
-        sse = residuals.norm2() * residuals.norm2();
+        // expand sum gamma[j] ((x - mean) / scale)^j into powers of x
+        beta = new double[rank];
+        double scalePower = 1.0;
+        for (int j = 0; j < rank; j++) {
+            final double c = gamma[j] / scalePower;
+            double binomial = 1.0;
+            double shift = 1.0;
+            for (int k = j; k >= 0; k--) {
+                beta[k] += c * binomial * shift;
+                binomial = binomial * k / (j - k + 1);
+                shift *= -mean;
+            }
+            scalePower *= scale;
+        }
     }
 
     /**
@@ -110,8 +190,8 @@ public class PolynomialRegression implements Comparable<PolynomialRegression> {
      */
     public double beta(int j) {
         // to make -0.0 print as 0.0
-        if (Math.abs(beta.get(j, 0)) < 1E-4) return 0.0;
-        return beta.get(j, 0);
+        if (Math.abs(beta[j]) < 1E-4) return 0.0;
+        return beta[j];
     }
 
     /**
@@ -0,0 +1,98 @@
+package common.utility.sysid;
+
+import java.util.Arrays;
+
+/**
+ * Team 3128's growable column of primitive samples.
+ * <p>Values are stored in a single {@code double[]} so indexed access is O(1) and the backing
+ * array can be handed to a regression without copying or boxing.
+ * @since 2025 Reefscape
+ */
+public class SampleBuffer {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private double[] data;
+    private int size = 0;
+
+    /**
+     * Creates a new empty sample buffer.
+     */
+    public SampleBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty sample buffer.
+     * @param capacity Number of samples to allocate room for.
+     */
+    public SampleBuffer(int capacity) {
+        data = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a sample to the end of the buffer.
+     * @param value Value of the sample.
+     */
+    public void add(double value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    /**
+     * Returns the sample at an index.
+     * @param index Index of the sample.
+     * @return The value of the sample.
+     */
+    public double get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        return data[index];
+    }
+
+    /**
+     * Replaces the sample at an index.
+     * @param index Index of the sample.
+     * @param value New value of the sample.
+     */
+    public void set(int index, double value) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        data[index] = value;
+    }
+
+    /**
+     * Returns the number of samples stored.
+     * @return The number of samples.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the backing array without copying. Only the first {@link #size()} entries are valid.
+     * @return The backing array of the buffer.
+     */
+    public double[] array() {
+        return data;
+    }
+
+    /**
+     * Ensures the buffer holds exactly the given number of samples, growing if needed.
+     * <p>Used to fill a derived column in place through {@link #array()}.
+     * @param size Number of samples.
+     */
+    public void resize(int size) {
+        if (size > data.length) {
+            data = Arrays.copyOf(data, Math.max(size, data.length * 2));
+        }
+        this.size = size;
+    }
+
+    /**
+     * Removes all samples while keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,171 @@
+package common.utility.sysid;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+import common.core.misc.BackgroundExecutor;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Team 3128's recorder for timestamped Phoenix 6 status signals.
+ * <p>A background thread waits for every signal to arrive, then stores the value of each signal
+ * with the average of their timestamps, so samples are recorded at the signal rate instead of the
+ * scheduler rate and carry the time the devices measured them.
+ * <p>StatusSignal is not thread safe, pass clones of signals that the main loop also refreshes.
+ * <p>Errors other than timeouts, ie. signals on different CAN buses, are reported once and retried
+ * after a back off instead of spinning.
+ * @since 2025 Reefscape
+ */
+public class SignalCapture implements AutoCloseable {
+
+    /**
+     * Receives captured samples.
+     */
+    @FunctionalInterface
+    public interface SampleSink {
+        /**
+         * Accepts one captured sample.
+         * @param timestamp Time the signals were measured in seconds, same timebase as {@code Utils.getCurrentTimeSeconds()}.
+         * @param values Value of each signal, in the order passed to the capture. Reused between samples.
+         */
+        void accept(double timestamp, double[] values);
+    }
+
+    private final BaseStatusSignal[] signals;
+    private final double frequency;
+    private final double[] previousFrequencies;
+
+    private final SampleBuffer timeData = new SampleBuffer();
+    private final SampleBuffer[] valueData;
+    private final double[] row;
+    private int drained = 0;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Creates a new capture of status signals.
+     * @param frequencyHz Update frequency to run the signals at while capturing, ie. 250 to 1000.
+     * @param signals Signals to record.
+     */
+    public SignalCapture(double frequencyHz, BaseStatusSignal... signals) {
+        this.signals = signals;
+        this.frequency = frequencyHz;
+        previousFrequencies = new double[signals.length];
+        valueData = new SampleBuffer[signals.length];
+        for (int i = 0; i < signals.length; i++) {
+            valueData[i] = new SampleBuffer();
+        }
+        row = new double[signals.length];
+    }
+
+    /**
+     * Speeds up the signals and starts recording.
+     */
+    public void start() {
+        if (running) return;
+        clear();
+        for (int i = 0; i < signals.length; i++) {
+            previousFrequencies[i] = signals[i].getAppliedUpdateFrequency();
+        }
+        BaseStatusSignal.setUpdateFrequencyForAll(frequency, signals);
+
+        running = true;
+        thread = BackgroundExecutor.threadFactory("NAR_SignalCapture").newThread(this::capture);
+        thread.start();
+    }
+
+    private void capture() {
+        final double timeout = 2.0 / frequency;
+        boolean reported = false;
+        while (running) {
+            final StatusCode status = BaseStatusSignal.waitForAll(timeout, signals);
+            if (status == StatusCode.RxTimeout) continue;
+            if (!status.isOK()) {
+                if (!reported) {
+                    DriverStation.reportWarning("SignalCapture wait failed: " + status.getName(), false);
+                    reported = true;
+                }
+                try {
+                    Thread.sleep((long) Math.ceil(timeout * 1000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+
+            double timestamp = 0;
+            for (final BaseStatusSignal signal : signals) {
+                timestamp += signal.getTimestamp().getTime();
+            }
+            timestamp /= signals.length;
+
+            synchronized (this) {
+                timeData.add(timestamp);
+                for (int i = 0; i < signals.length; i++) {
+                    valueData[i].add(signals[i].getValueAsDouble());
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes every sample recorded since the last drain to the sink, in order.
+     * @param sink Receiver of the samples.
+     * @return Number of samples passed to the sink.
+     */
+    public synchronized int drain(SampleSink sink) {
+        final int size = timeData.size();
+        final double[] time = timeData.array();
+        for (int i = drained; i < size; i++) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = valueData[j].array()[i];
+            }
+            sink.accept(time[i], row);
+        }
+        final int count = size - drained;
+        drained = size;
+        return count;
+    }
+
+    /**
+     * Stops recording and restores the previous signal update frequencies.
+     */
+    public void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < signals.length; i++) {
+            signals[i].setUpdateFrequency(previousFrequencies[i]);
+        }
+    }
+
+    /**
+     * Returns whether the capture is recording.
+     * @return True if the capture thread is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Clears all recorded samples.
+     */
+    public synchronized void clear() {
+        timeData.clear();
+        for (final SampleBuffer values : valueData) {
+            values.clear();
+        }
+        drained = 0;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+}
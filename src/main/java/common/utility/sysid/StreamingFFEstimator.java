@@ -0,0 +1,247 @@
+package common.utility.sysid;
+
+import java.util.Arrays;
+
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Team 3128's streaming estimator for feedforward constants.
+ * <p>Fits voltage = kS + kV * velocity + kA * acceleration with a joint least squares regression.
+ * Only the sufficient statistics of the regression are stored, so memory use does not grow with
+ * the number of samples and the estimates can be read at any time during a test.
+ * @since 2025 Reefscape
+ */
+public class StreamingFFEstimator {
+
+    private static final double SINGULAR_TOLERANCE = 1E-9;
+    private static final int CHECK_INTERVAL = 25;
+    private static final int REQUIRED_CHECKS = 3;
+    public static final double DEFAULT_TOLERANCE = 0.01;
+
+    // sums of the normal equations for the regressors [1, velocity, acceleration]
+    private double n;
+    private double sumV, sumA, sumVV, sumVA, sumAA;
+    private double sumY, sumVY, sumAY, sumYY;
+
+    private double prevTime;
+    private double prevVelocity;
+    private boolean hasPrevious = false;
+
+    private double kS, kV, kA, r2;
+    private boolean solved = false;
+
+    private int samplesSinceCheck = 0;
+    private int checkIndex = 0;
+    private final double[] recentChanges = new double[REQUIRED_CHECKS];
+    private double checkkS, checkkV, checkkA;
+
+    private final DoublePublisher kSPublisher;
+    private final DoublePublisher kVPublisher;
+    private final DoublePublisher kAPublisher;
+    private final DoublePublisher r2Publisher;
+    private final DoublePublisher countPublisher;
+    private final BooleanPublisher convergedPublisher;
+
+    /**
+     * Creates a new streaming estimator that publishes to NetworkTables under SysId/name.
+     * @param name Name of the Subsystem.
+     */
+    public StreamingFFEstimator(String name) {
+        final NetworkTable table = NetworkTableInstance.getDefault().getTable("SysId").getSubTable(name);
+        kSPublisher = table.getDoubleTopic("kS").publish();
+        kVPublisher = table.getDoubleTopic("kV").publish();
+        kAPublisher = table.getDoubleTopic("kA").publish();
+        r2Publisher = table.getDoubleTopic("R2").publish();
+        countPublisher = table.getDoubleTopic("Count").publish();
+        convergedPublisher = table.getBooleanTopic("Converged").publish();
+        clear();
+    }
+
+    /**
+     * Adds the subsystem's state at a specific time.
+     * <p>Acceleration is the backward difference between this sample and the previous one,
+     * so the first sample only seeds the difference.
+     * @param time Current time.
+     * @param velocity Velocity of the subsystem.
+     * @param voltage Voltage applied to the subsystem.
+     */
+    public void add(double time, double velocity, double voltage) {
+        velocity = Math.abs(velocity);
+        voltage = Math.abs(voltage);
+        if (!hasPrevious || time <= prevTime) {
+            prevTime = time;
+            prevVelocity = velocity;
+            hasPrevious = true;
+            return;
+        }
+
+        final double acceleration = (velocity - prevVelocity) / (time - prevTime);
+        prevTime = time;
+        prevVelocity = velocity;
+
+        n++;
+        sumV += velocity;
+        sumA += acceleration;
+        sumVV += velocity * velocity;
+        sumVA += velocity * acceleration;
+        sumAA += acceleration * acceleration;
+        sumY += voltage;
+        sumVY += velocity * voltage;
+        sumAY += acceleration * voltage;
+        sumYY += voltage * voltage;
+        solved = false;
+
+        if (++samplesSinceCheck >= CHECK_INTERVAL) {
+            samplesSinceCheck = 0;
+            checkConvergence();
+        }
+    }
+
+    /**
+     * Solves the normal equations for the current estimates.
+     * <p>Falls back to a kS/kV fit when acceleration is not excited enough to separate kA.
+     */
+    private void solve() {
+        if (solved) return;
+        solved = true;
+        if (n < 3) {
+            kS = kV = kA = 0;
+            r2 = 0;
+            return;
+        }
+
+        // cofactors of the symmetric 3x3 matrix [[n, sumV, sumA], [sumV, sumVV, sumVA], [sumA, sumVA, sumAA]]
+        final double c00 = sumVV * sumAA - sumVA * sumVA;
+        final double c01 = sumVA * sumA - sumV * sumAA;
+        final double c02 = sumV * sumVA - sumVV * sumA;
+        final double c11 = n * sumAA - sumA * sumA;
+        final double c12 = sumV * sumA - n * sumVA;
+        final double c22 = n * sumVV - sumV * sumV;
+        final double det = n * c00 + sumV * c01 + sumA * c02;
+
+        if (Math.abs(det) > SINGULAR_TOLERANCE * n * sumVV * sumAA) {
+            kS = (c00 * sumY + c01 * sumVY + c02 * sumAY) / det;
+            kV = (c01 * sumY + c11 * sumVY + c12 * sumAY) / det;
+            kA = (c02 * sumY + c12 * sumVY + c22 * sumAY) / det;
+        } else if (Math.abs(c22) > SINGULAR_TOLERANCE) {
+            kS = (sumVV * sumY - sumV * sumVY) / c22;
+            kV = (n * sumVY - sumV * sumY) / c22;
+            kA = 0;
+        } else {
+            kS = sumY / n;
+            kV = 0;
+            kA = 0;
+        }
+
+        // SSE = y'y - 2 b'X'y + b'X'X b
+        final double fitted = kS * sumY + kV * sumVY + kA * sumAY;
+        final double quadratic = kS * kS * n + kV * kV * sumVV + kA * kA * sumAA
+                + 2 * (kS * kV * sumV + kS * kA * sumA + kV * kA * sumVA);
+        final double sse = sumYY - 2 * fitted + quadratic;
+        final double sst = sumYY - sumY * sumY / n;
+        r2 = sst <= 0 ? 1.0 : 1.0 - Math.max(sse, 0) / sst;
+    }
+
+    /**
+     * Compares the current estimates against the ones from the previous check.
+     */
+    private void checkConvergence() {
+        solve();
+        recentChanges[checkIndex] = Math.max(relativeChange(kS, checkkS), Math.max(relativeChange(kV, checkkV), relativeChange(kA, checkkA)));
+        checkIndex = (checkIndex + 1) % REQUIRED_CHECKS;
+        checkkS = kS;
+        checkkV = kV;
+        checkkA = kA;
+    }
+
+    private static double relativeChange(double current, double previous) {
+        return Math.abs(current - previous) / Math.max(Math.abs(current), 1E-3);
+    }
+
+    /**
+     * Returns whether the estimates have stopped changing.
+     * @param tolerance Maximum relative change of kS, kV and kA between checks.
+     * @return True if the last checks all changed less than the tolerance.
+     */
+    public boolean isConverged(double tolerance) {
+        for (final double change : recentChanges) {
+            if (change > tolerance) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the current estimates to NetworkTables.
+     */
+    public void publish() {
+        solve();
+        kSPublisher.set(kS);
+        kVPublisher.set(kV);
+        kAPublisher.set(kA);
+        r2Publisher.set(r2);
+        countPublisher.set(n);
+        convergedPublisher.set(isConverged(DEFAULT_TOLERANCE));
+    }
+
+    /**
+     * Returns the kS value estimated so far.
+     * @return Returns the kS value.
+     */
+    public double getkS() {
+        solve();
+        return kS;
+    }
+
+    /**
+     * Returns the kV value estimated so far.
+     * @return Returns the kV value.
+     */
+    public double getkV() {
+        solve();
+        return kV;
+    }
+
+    /**
+     * Returns the kA value estimated so far.
+     * @return Returns the kA value.
+     */
+    public double getkA() {
+        solve();
+        return kA;
+    }
+
+    /**
+     * Returns the coefficient of determination of the joint fit.
+     * @return Returns the R2 value.
+     */
+    public double getR2() {
+        solve();
+        return r2;
+    }
+
+    /**
+     * Returns the number of samples used in the fit.
+     * @return Returns the sample count.
+     */
+    public int getCount() {
+        return (int) n;
+    }
+
+    /**
+     * Clears the statistics stored in the estimator.
+     */
+    public void clear() {
+        n = 0;
+        sumV = sumA = sumVV = sumVA = sumAA = 0;
+        sumY = sumVY = sumAY = sumYY = 0;
+        hasPrevious = false;
+        solved = false;
+        samplesSinceCheck = 0;
+        checkIndex = 0;
+        Arrays.fill(recentChanges, Double.POSITIVE_INFINITY);
+        checkkS = checkkV = checkkA = 0;
+    }
+}